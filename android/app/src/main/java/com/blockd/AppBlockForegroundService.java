@@ -15,6 +15,7 @@ import androidx.core.app.NotificationCompat;
 /**
  * Foreground Service to keep Blockd alive 24/7.
  * Android requires a persistent notification for apps that need to run continuously.
+ * Hosts the EnforcementEngine's monitoring loop while it runs.
  */
 public class AppBlockForegroundService extends Service {
     private static final String TAG = "BlockdForegroundService";
@@ -41,10 +42,8 @@ public class AppBlockForegroundService extends Service {
         startForeground(NOTIFICATION_ID, buildNotification());
         isRunning = true;
         
-        // Reload blocked apps in accessibility service if running
-        if (BlockingAccessibilityService.isRunning()) {
-            BlockingAccessibilityService.getInstance().loadBlockedApps();
-        }
+        // Idempotent - repeated start commands just keep the same loop going
+        EnforcementEngine.getInstance(this).start(this);
         
         return START_STICKY; // Restart if killed
     }
@@ -52,6 +51,7 @@ public class AppBlockForegroundService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        EnforcementEngine.getInstance(this).stop(this);
         isRunning = false;
         Log.d(TAG, "Foreground Service destroyed");
     }
@@ -0,0 +1,79 @@
+package com.blockd;
+
+/**
+ * Decides whether a blocked-app window event should launch the block screen.
+ * One app launch produces a burst of TYPE_WINDOW_STATE_CHANGED events; only the first
+ * one launches, the rest are dropped until the block screen is in front or the launch times out.
+ *
+ * IDLE -> BLOCKING (launch issued) -> SHOWN (Blockd is in front) -> DISMISSED (back on home)
+ */
+public class BlockLaunchController {
+
+    public enum State { IDLE, BLOCKING, SHOWN, DISMISSED }
+
+    // If Blockd hasn't come to the front by then, assume the launch was lost and retry
+    private static final long LAUNCH_TIMEOUT_MS = 2000;
+
+    private State state = State.IDLE;
+    private String blockedPackage = null;
+    private long launchTime = 0;
+
+    private long issuedLaunches = 0;
+    private long suppressedLaunches = 0;
+
+    /**
+     * A window of a blocked app came to the front. Returns true if a launch should be issued.
+     */
+    public synchronized boolean onBlockedAppEvent(String packageName, long now) {
+        if (state == State.BLOCKING
+                && packageName.equals(blockedPackage)
+                && now - launchTime < LAUNCH_TIMEOUT_MS) {
+            suppressedLaunches++;
+            return false;
+        }
+        // SHOWN / DISMISSED / IDLE, a different package, or a stale launch: the app is really in front
+        state = State.BLOCKING;
+        blockedPackage = packageName;
+        launchTime = now;
+        issuedLaunches++;
+        return true;
+    }
+
+    /**
+     * A Blockd window came to the front.
+     */
+    public synchronized void onBlockScreenVisible() {
+        if (state == State.BLOCKING) {
+            state = State.SHOWN;
+        }
+    }
+
+    /**
+     * The user is back on the home screen, or the block was lifted.
+     */
+    public synchronized void onDismissed() {
+        if (state == State.BLOCKING || state == State.SHOWN) {
+            state = State.DISMISSED;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized String getBlockedPackage() {
+        return state == State.BLOCKING || state == State.SHOWN ? blockedPackage : null;
+    }
+
+    public synchronized boolean isBlockScreenShown() {
+        return state == State.SHOWN;
+    }
+
+    public synchronized long getIssuedLaunches() {
+        return issuedLaunches;
+    }
+
+    public synchronized long getSuppressedLaunches() {
+        return suppressedLaunches;
+    }
+}
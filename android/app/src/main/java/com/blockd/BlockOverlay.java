@@ -0,0 +1,147 @@
+package com.blockd;
+
+import android.accessibilityservice.AccessibilityService;
+import android.graphics.PixelFormat;
+import android.graphics.Typeface;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.WindowManager;
+import android.widget.Button;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+/**
+ * Native block screen that covers a blocked app within a frame of the block decision.
+ * The view tree and window params are built once when the service connects and kept
+ * detached; showing it is a single WindowManager.addView. The React Native block screen
+ * takes over once it has painted (see BlockingModule.checkInitialLaunch).
+ */
+public class BlockOverlay {
+    private static final String TAG = "BlockOverlay";
+
+    private final AccessibilityService service;
+    private final WindowManager windowManager;
+    private final FrameLayout root;
+    private final WindowManager.LayoutParams params;
+    private boolean attached = false;
+
+    public BlockOverlay(AccessibilityService service) {
+        this.service = service;
+        this.windowManager = (WindowManager) service.getSystemService(AccessibilityService.WINDOW_SERVICE);
+        this.root = buildView();
+
+        // TYPE_ACCESSIBILITY_OVERLAY is stable on MIUI and needs no overlay permission
+        this.params = new WindowManager.LayoutParams(
+            WindowManager.LayoutParams.MATCH_PARENT,
+            WindowManager.LayoutParams.MATCH_PARENT,
+            WindowManager.LayoutParams.TYPE_ACCESSIBILITY_OVERLAY,
+            WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+            WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL |
+            WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN |
+            WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS,
+            PixelFormat.OPAQUE);
+        this.params.gravity = Gravity.CENTER;
+    }
+
+    private FrameLayout buildView() {
+        // Fullscreen dark overlay
+        FrameLayout layout = new FrameLayout(service);
+        layout.setBackgroundColor(0xFF0A0A0F); // Solid dark background
+
+        // Content container
+        LinearLayout content = new LinearLayout(service);
+        content.setOrientation(LinearLayout.VERTICAL);
+        content.setGravity(Gravity.CENTER);
+        content.setPadding(80, 0, 80, 0);
+        FrameLayout.LayoutParams contentParams = new FrameLayout.LayoutParams(
+            FrameLayout.LayoutParams.MATCH_PARENT,
+            FrameLayout.LayoutParams.WRAP_CONTENT);
+        contentParams.gravity = Gravity.CENTER;
+        layout.addView(content, contentParams);
+
+        // Red X icon
+        TextView icon = new TextView(service);
+        icon.setText("⛔");
+        icon.setTextSize(48);
+        icon.setGravity(Gravity.CENTER);
+        content.addView(icon);
+
+        // BLOCKED Label
+        TextView blockedLabel = new TextView(service);
+        blockedLabel.setText("BLOCKED");
+        blockedLabel.setTextColor(0xFFEF4444); // Red
+        blockedLabel.setTextSize(24);
+        blockedLabel.setTypeface(null, Typeface.BOLD);
+        blockedLabel.setGravity(Gravity.CENTER);
+        blockedLabel.setPadding(0, 40, 0, 20);
+        content.addView(blockedLabel);
+
+        // Title
+        TextView title = new TextView(service);
+        title.setText("This app is blocked");
+        title.setTextColor(0xFFFFFFFF);
+        title.setTextSize(22);
+        title.setTypeface(null, Typeface.BOLD);
+        title.setGravity(Gravity.CENTER);
+        content.addView(title);
+
+        // Subtitle
+        TextView subtitle = new TextView(service);
+        subtitle.setText("Stay focused! You set this limit.\nPress the button to go home.");
+        subtitle.setTextColor(0x99FFFFFF);
+        subtitle.setTextSize(14);
+        subtitle.setGravity(Gravity.CENTER);
+        subtitle.setPadding(0, 20, 0, 60);
+        content.addView(subtitle);
+
+        // Exit Button
+        Button exitBtn = new Button(service);
+        exitBtn.setText("Exit App");
+        exitBtn.setBackgroundColor(0x33FFFFFF);
+        exitBtn.setTextColor(0xFFFFFFFF);
+        exitBtn.setTextSize(16);
+        exitBtn.setPadding(60, 24, 60, 24);
+        exitBtn.setAllCaps(false);
+        exitBtn.setOnClickListener(v -> {
+            service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_HOME);
+            hide();
+        });
+        LinearLayout.LayoutParams btnParams = new LinearLayout.LayoutParams(
+            LinearLayout.LayoutParams.MATCH_PARENT,
+            LinearLayout.LayoutParams.WRAP_CONTENT);
+        content.addView(exitBtn, btnParams);
+
+        return layout;
+    }
+
+    /**
+     * Attach the prebuilt view. Must be called on the main thread.
+     */
+    public void show() {
+        if (attached) return;
+        try {
+            windowManager.addView(root, params);
+            attached = true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing overlay: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Detach the view but keep it for the next block. Must be called on the main thread.
+     */
+    public void hide() {
+        if (!attached) return;
+        try {
+            windowManager.removeViewImmediate(root);
+        } catch (Exception e) {
+            Log.e(TAG, "Error hiding overlay: " + e.getMessage());
+        }
+        attached = false;
+    }
+
+    public boolean isShowing() {
+        return attached;
+    }
+}
@@ -0,0 +1,273 @@
+package com.blockd;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pure-Java evaluation of the detox / limit rules.
+ * Shared by BlockingModule and BlockingAccessibilityService so both paths make the same
+ * decision, and kept free of Android types so it can be exercised on a plain JVM.
+ *
+ * Rules live in an immutable Snapshot published through an AtomicReference. Writers (the RN
+ * native-modules thread) copy, modify and swap; readers (the accessibility event thread)
+ * just read the current reference, so they never lock or see a half-applied update.
+ *
+ * Every snapshot also carries the last few single-rule changes, so the policy file can log
+ * what changed since the generation it last wrote.
+ */
+public class BlockPolicyEngine {
+    public static final String MODE_DETOX = "detox";
+    public static final String MODE_LIMIT = "limit";
+
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    // How many changes a snapshot remembers; a writer further behind saves without a log
+    private static final int CHANGELOG_SIZE = 64;
+
+    /**
+     * Supplies today's foreground time for a package. Only consulted for limit-mode rules.
+     */
+    public interface UsageSource {
+        long usedTodayMs(String packageName);
+    }
+
+    public enum BlockType {
+        NONE("none"),
+        DETOX("detox"),
+        LIMIT_ACTIVE("limit_active"),
+        LIMIT_EXCEEDED("limit_exceeded");
+
+        public final String jsName;
+
+        BlockType(String jsName) {
+            this.jsName = jsName;
+        }
+    }
+
+    public static final class Rule {
+        public final String mode; // "detox" or "limit"
+        public final long detoxEndTime; // Unix timestamp for detox end
+        public final int dailyLimitMinutes;
+
+        public Rule(String mode, long detoxEndTime, int dailyLimitMinutes) {
+            this.mode = mode;
+            this.detoxEndTime = detoxEndTime;
+            this.dailyLimitMinutes = dailyLimitMinutes;
+        }
+    }
+
+    /**
+     * A single put (rule != null) or remove (rule == null) that produced the given generation.
+     */
+    public static final class Change {
+        public final long generation;
+        public final String packageName;
+        public final Rule rule;
+
+        Change(long generation, String packageName, Rule rule) {
+            this.generation = generation;
+            this.packageName = packageName;
+            this.rule = rule;
+        }
+
+        public boolean isRemove() {
+            return rule == null;
+        }
+    }
+
+    /**
+     * Immutable view of all rules. The generation increases by one with every published change.
+     */
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(0, Collections.<String, Rule>emptyMap(), new Change[0]);
+
+        public final long generation;
+        private final Map<String, Rule> rules; // never modified after publication
+        private final Change[] changelog; // contiguous, ending at this generation
+
+        Snapshot(long generation, Map<String, Rule> rules, Change[] changelog) {
+            this.generation = generation;
+            this.rules = rules;
+            this.changelog = changelog;
+        }
+
+        /**
+         * Changes needed to go from sinceGeneration to this snapshot, or null if they are no
+         * longer known (too old, or the rules were replaced wholesale) and a full copy is needed.
+         */
+        public List<Change> changesSince(long sinceGeneration) {
+            if (sinceGeneration == generation) return Collections.emptyList();
+            long oldestKnown = generation - changelog.length;
+            if (sinceGeneration < oldestKnown || sinceGeneration > generation) return null;
+            int from = (int) (sinceGeneration - oldestKnown);
+            return Collections.unmodifiableList(Arrays.asList(changelog).subList(from, changelog.length));
+        }
+
+        Snapshot with(Map<String, Rule> nextRules, String packageName, Rule rule) {
+            long nextGeneration = generation + 1;
+            int keep = Math.min(changelog.length, CHANGELOG_SIZE - 1);
+            Change[] nextLog = new Change[keep + 1];
+            System.arraycopy(changelog, changelog.length - keep, nextLog, 0, keep);
+            nextLog[keep] = new Change(nextGeneration, packageName, rule);
+            return new Snapshot(nextGeneration, nextRules, nextLog);
+        }
+
+        public Rule get(String packageName) {
+            return rules.get(packageName);
+        }
+
+        public boolean contains(String packageName) {
+            return rules.containsKey(packageName);
+        }
+
+        public Set<String> packages() {
+            return Collections.unmodifiableSet(rules.keySet());
+        }
+
+        public Map<String, Rule> asMap() {
+            return Collections.unmodifiableMap(rules);
+        }
+
+        public int size() {
+            return rules.size();
+        }
+    }
+
+    public static final class Decision {
+        public static final Decision NONE = new Decision(BlockType.NONE, 0, 0, 0, 0);
+
+        public final BlockType type;
+        public final long remainingMs;
+        public final int remainingMinutes;
+        public final int remainingDays;
+        public final int dailyLimitMinutes;
+
+        Decision(BlockType type, long remainingMs, int remainingMinutes, int remainingDays, int dailyLimitMinutes) {
+            this.type = type;
+            this.remainingMs = remainingMs;
+            this.remainingMinutes = remainingMinutes;
+            this.remainingDays = remainingDays;
+            this.dailyLimitMinutes = dailyLimitMinutes;
+        }
+
+        /** True when the app must be covered right now. */
+        public boolean isBlocking() {
+            return type == BlockType.DETOX || type == BlockType.LIMIT_EXCEEDED;
+        }
+
+        /** True when the block screen has something to show (including the limit start screen). */
+        public boolean isActive() {
+            return type != BlockType.NONE;
+        }
+    }
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+    private volatile UsageSource usageSource;
+
+    public BlockPolicyEngine(UsageSource usageSource) {
+        this.usageSource = usageSource;
+    }
+
+    public void setUsageSource(UsageSource usageSource) {
+        this.usageSource = usageSource;
+    }
+
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    public long generation() {
+        return current.get().generation;
+    }
+
+    public void putRule(String packageName, String mode, long detoxEndTime, int dailyLimitMinutes) {
+        Rule rule = new Rule(mode, detoxEndTime, dailyLimitMinutes);
+        Snapshot prev;
+        Snapshot next;
+        do {
+            prev = current.get();
+            Map<String, Rule> rules = new HashMap<>(prev.rules);
+            rules.put(packageName, rule);
+            next = prev.with(rules, packageName, rule);
+        } while (!current.compareAndSet(prev, next));
+    }
+
+    public boolean removeRule(String packageName) {
+        Snapshot prev;
+        Snapshot next;
+        do {
+            prev = current.get();
+            if (!prev.contains(packageName)) return false;
+            Map<String, Rule> rules = new HashMap<>(prev.rules);
+            rules.remove(packageName);
+            next = prev.with(rules, packageName, null);
+        } while (!current.compareAndSet(prev, next));
+        return true;
+    }
+
+    /**
+     * Replace every rule in one step, e.g. after loading from disk. Drops the changelog.
+     */
+    public void replaceAll(Map<String, Rule> rules) {
+        Map<String, Rule> copy = new HashMap<>(rules);
+        Snapshot prev;
+        do {
+            prev = current.get();
+        } while (!current.compareAndSet(prev, new Snapshot(prev.generation + 1, copy, new Change[0])));
+    }
+
+    public void clear() {
+        replaceAll(Collections.<String, Rule>emptyMap());
+    }
+
+    public Rule getRule(String packageName) {
+        return current.get().get(packageName);
+    }
+
+    public Set<String> packages() {
+        return current.get().packages();
+    }
+
+    public int size() {
+        return current.get().size();
+    }
+
+    public Decision evaluate(String packageName, long now) {
+        Rule rule = current.get().get(packageName);
+        if (rule == null) return Decision.NONE;
+        UsageSource source = usageSource;
+        long usedMs = MODE_LIMIT.equals(rule.mode) && source != null
+            ? source.usedTodayMs(packageName)
+            : 0;
+        return evaluate(rule, now, usedMs);
+    }
+
+    /**
+     * Decide for a single rule given the current time and today's usage.
+     */
+    public static Decision evaluate(Rule rule, long now, long usedTodayMs) {
+        if (MODE_DETOX.equals(rule.mode)) {
+            if (now >= rule.detoxEndTime) return Decision.NONE;
+            long remainingMs = rule.detoxEndTime - now;
+            return new Decision(BlockType.DETOX, remainingMs, 0, (int) (remainingMs / DAY_MS), 0);
+        }
+
+        if (MODE_LIMIT.equals(rule.mode)) {
+            long remainingMs = rule.dailyLimitMinutes * MINUTE_MS - usedTodayMs;
+            if (remainingMs <= 0) {
+                return new Decision(BlockType.LIMIT_EXCEEDED, 0, 0, 0, rule.dailyLimitMinutes);
+            }
+            // Round up so "30 seconds left" still reads as 1 minute
+            int remainingMinutes = (int) ((remainingMs + MINUTE_MS - 1) / MINUTE_MS);
+            return new Decision(BlockType.LIMIT_ACTIVE, remainingMs, remainingMinutes, 0, rule.dailyLimitMinutes);
+        }
+
+        return Decision.NONE;
+    }
+}
@@ -0,0 +1,179 @@
+package com.blockd;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Turns the stream of per-check decisions into state transitions for JavaScript: entered a
+ * restricted app, crossed the warning threshold, got blocked, left. Repeated decisions for the
+ * same state are dropped, and transitions within one frame are coalesced into the last one,
+ * so bridge traffic follows what the user does instead of the clock.
+ *
+ * Decisions for our own package are skipped: the block screen coming up over a restricted app
+ * is not the user leaving it.
+ */
+public class BlockStateEmitter {
+
+    // Remaining time at which a running limit counts as "about to run out"
+    public static final long WARNING_THRESHOLD_MS = 5 * 60 * 1000L;
+    private static final long FRAME_MS = 16;
+
+    public enum Transition {
+        ENTERED("entered"),
+        WARNING("warning"),
+        BLOCKED("blocked"),
+        LEFT("left");
+
+        public final String jsName;
+
+        Transition(String jsName) {
+            this.jsName = jsName;
+        }
+    }
+
+    /**
+     * Receives the coalesced transitions, on the emitter's looper.
+     */
+    public interface Sink {
+        void emit(Transition transition, String packageName, BlockPolicyEngine.Decision decision);
+    }
+
+    private enum Phase { NONE, ACTIVE, WARNING, BLOCKING }
+
+    private final Handler handler;
+    private final String ownPackage;
+    private final Sink sink;
+
+    // Latest decision - what the pull API returns
+    private String currentPackage = null;
+    private BlockPolicyEngine.Decision currentDecision = BlockPolicyEngine.Decision.NONE;
+    private Phase currentPhase = Phase.NONE;
+
+    // Transition waiting for the end of the frame
+    private Transition pendingTransition = null;
+    private boolean flushScheduled = false;
+
+    // Last state actually sent, so A -> B -> A within a frame sends nothing
+    private String emittedPackage = null;
+    private Phase emittedPhase = Phase.NONE;
+
+    private long emittedCount = 0;
+    private long droppedCount = 0;
+
+    private final Runnable flushRunnable = this::flush;
+
+    public BlockStateEmitter(Looper looper, String ownPackage, Sink sink) {
+        this.handler = new Handler(looper);
+        this.ownPackage = ownPackage;
+        this.sink = sink;
+    }
+
+    /**
+     * Feed the decision for the current foreground app (null or NONE once nothing is restricted).
+     */
+    public synchronized void onDecision(String packageName, BlockPolicyEngine.Decision decision) {
+        if (ownPackage.equals(packageName)) {
+            droppedCount++;
+            return;
+        }
+        Phase phase = phaseOf(decision);
+        if (phase == Phase.NONE) packageName = null;
+        boolean samePackage = packageName == null ? currentPackage == null : packageName.equals(currentPackage);
+
+        Phase previous = currentPhase;
+        currentPackage = packageName;
+        currentDecision = phase == Phase.NONE ? BlockPolicyEngine.Decision.NONE : decision;
+        currentPhase = phase;
+
+        if (samePackage && phase == previous) {
+            droppedCount++;
+            return;
+        }
+        pendingTransition = transitionFor(phase, samePackage);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, FRAME_MS);
+        }
+    }
+
+    private static Transition transitionFor(Phase phase, boolean samePackage) {
+        switch (phase) {
+            case NONE:
+                return Transition.LEFT;
+            case BLOCKING:
+                return Transition.BLOCKED;
+            case WARNING:
+                // Straight into an app that is nearly out of time counts as entering it
+                return samePackage ? Transition.WARNING : Transition.ENTERED;
+            default:
+                return Transition.ENTERED;
+        }
+    }
+
+    private void flush() {
+        Transition transition;
+        String packageName;
+        BlockPolicyEngine.Decision decision;
+        synchronized (this) {
+            flushScheduled = false;
+            transition = pendingTransition;
+            pendingTransition = null;
+            if (transition == null) return;
+            boolean unchanged = currentPhase == emittedPhase
+                && (currentPackage == null ? emittedPackage == null : currentPackage.equals(emittedPackage));
+            if (unchanged) {
+                droppedCount++;
+                return;
+            }
+            packageName = currentPackage;
+            decision = currentDecision;
+            emittedPackage = packageName;
+            emittedPhase = currentPhase;
+            emittedCount++;
+        }
+        sink.emit(transition, packageName, decision);
+    }
+
+    /**
+     * Forget what was sent, so the next decision is emitted even if it matches.
+     */
+    public synchronized void reset() {
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        pendingTransition = null;
+        currentPackage = null;
+        currentDecision = BlockPolicyEngine.Decision.NONE;
+        currentPhase = Phase.NONE;
+        emittedPackage = null;
+        emittedPhase = Phase.NONE;
+    }
+
+    /**
+     * Foreground package of the latest restricting decision, or null.
+     */
+    public synchronized String getCurrentPackage() {
+        return currentPackage;
+    }
+
+    public synchronized BlockPolicyEngine.Decision getCurrentDecision() {
+        return currentDecision;
+    }
+
+    public synchronized long getEmittedCount() {
+        return emittedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    private static Phase phaseOf(BlockPolicyEngine.Decision decision) {
+        if (decision == null || !decision.isActive()) return Phase.NONE;
+        if (decision.isBlocking()) return Phase.BLOCKING;
+        if (decision.type == BlockPolicyEngine.BlockType.LIMIT_ACTIVE
+                && decision.remainingMs <= WARNING_THRESHOLD_MS) {
+            return Phase.WARNING;
+        }
+        return Phase.ACTIVE;
+    }
+}
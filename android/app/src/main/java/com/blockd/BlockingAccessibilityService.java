@@ -2,16 +2,16 @@ package com.blockd;
 
 import android.accessibilityservice.AccessibilityService;
 import android.accessibilityservice.AccessibilityServiceInfo;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
 
-import org.json.JSONObject;
-
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Accessibility Service for real-time app launch detection.
@@ -19,16 +19,53 @@ import java.util.Set;
  */
 public class BlockingAccessibilityService extends AccessibilityService {
     private static final String TAG = "BlockingA11yService";
-    private static final String PREFS_NAME = "BlockdBlockingPrefs";
-    private static final String KEY_BLOCKED_APPS = "blocked_apps_json";
     
-    private Set<String> blockedPackages = new HashSet<>();
-    private String lastBlockedPackage = "";
-    private long lastBlockTime = 0;
-    private String currentOverlayPackage = null; // Track which package the overlay is for
+    // The engine owns the policy; we only read it
+    private BlockPolicyEngine policy;
+    private PackageClassifier classifier;
+    private final BlockLaunchController launchController = new BlockLaunchController();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private BlockOverlay overlay;
+    
+    // Rule changes made in the app are announced by the shared EnforcementEngine
+    private final EnforcementEngine.PolicyListener policyListener = this::onPolicyChanged;
+    
+    // A limit running out or a detox starting while the app is already open - no window event
+    // comes for that, so block on the engine's decision (called on the engine thread)
+    private final EnforcementEngine.DecisionListener decisionListener = (packageName, decision) -> {
+        if (!decision.isBlocking()) return;
+        mainHandler.post(() -> blockFromEngine(packageName, decision));
+    };
+    
+    // Launchers can be installed, removed or updated while we run
+    private final BroadcastReceiver packageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            refreshLaunchers();
+        }
+    };
     
     // Static reference for React Native bridge
-    private static BlockingAccessibilityService instance;
+    private static volatile BlockingAccessibilityService instance;
+    
+    /**
+     * Told (on the main thread) whenever a different app's window comes to the front.
+     * Lets the EnforcementEngine re-check on demand instead of polling.
+     */
+    public interface WindowChangeListener {
+        void onWindowChanged(String packageName);
+    }
+    
+    private static final CopyOnWriteArrayList<WindowChangeListener> windowChangeListeners = new CopyOnWriteArrayList<>();
+    private String lastWindowPackage = null;
+    
+    public static void addWindowChangeListener(WindowChangeListener listener) {
+        windowChangeListeners.addIfAbsent(listener);
+    }
+    
+    public static void removeWindowChangeListener(WindowChangeListener listener) {
+        windowChangeListeners.remove(listener);
+    }
     
     public static BlockingAccessibilityService getInstance() {
         return instance;
@@ -50,7 +87,23 @@ public class BlockingAccessibilityService extends AccessibilityService {
         info.notificationTimeout = 100;
         setServiceInfo(info);
         
-        loadBlockedApps();
+        // Build the native block screen now so a block only has to attach it
+        overlay = new BlockOverlay(this);
+        
+        EnforcementEngine engine = EnforcementEngine.getInstance(this);
+        policy = engine.getPolicy();
+        classifier = new PackageClassifier(getPackageName(), policy);
+        refreshLaunchers();
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addDataScheme("package");
+        registerReceiver(packageChangeReceiver, packageFilter);
+        
+        engine.addPolicyListener(policyListener);
+        engine.addDecisionListener(decisionListener);
         
         // Start ForegroundService to keep alive on MIUI/Xiaomi devices
         try {
@@ -68,10 +121,6 @@ public class BlockingAccessibilityService extends AccessibilityService {
         Log.d(TAG, "Accessibility Service connected and configured");
     }
 
-    private android.view.WindowManager windowManager;
-    private android.view.View overlayView;
-    private android.widget.FrameLayout overlayLayout;
-
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
         if (event == null || event.getPackageName() == null) return;
@@ -80,144 +129,67 @@ public class BlockingAccessibilityService extends AccessibilityService {
         
         // FIX: SystemUI NICHT mehr ausschließen - das verursacht das Flackern!
         // Nur Blockd selbst und Launcher ignorieren
-        if (packageName.equals("com.blockd") || 
-            packageName.contains("launcher") || 
-            packageName.contains("home") ||
-            packageName.contains("nexuslauncher") || // Pixel Launcher
-            packageName.contains("pixel.launcher")) { // Pixel Launcher
-            
-            // Overlay nur verstecken wenn wirklich im Home/Launcher
-            hideOverlay(); 
-            return;
+        switch (classifier.classify(packageName)) {
+            case IGNORE:
+                // Our own window - the block screen is on its way to the front.
+                // The native overlay stays up until RN reports it has painted (onBlockScreenReady).
+                launchController.onBlockScreenVisible();
+                break;
+            case LAUNCHER:
+                // Overlay nur verstecken wenn wirklich im Home/Launcher
+                launchController.onDismissed();
+                hideOverlay();
+                break;
+            case BLOCKED:
+                long now = System.currentTimeMillis();
+                BlockPolicyEngine.Decision decision = policy.evaluate(packageName, now);
+                if (!decision.isActive()) break; // e.g. detox already over
+                
+                // One app launch fires several window events - launch only once
+                if (!launchController.onBlockedAppEvent(packageName, now)) break;
+                Log.d(TAG, "BLOCKED APP DETECTED: " + packageName + " (" + decision.type.jsName + ")");
+                
+                // Cover the app in this frame, then bring up the React Native block screen
+                if (decision.isBlocking()) {
+                    overlay.show();
+                }
+                launchBlockOverlay(packageName, decision);
+                break;
+            case ALLOWED:
+                break;
         }
         
-        // Check if this app is blocked
-        if (blockedPackages.contains(packageName)) {
-            Log.d(TAG, "BLOCKED APP DETECTED: " + packageName);
-            
-            // NUR launchBlockOverlay - das startet die schöne React App
-            // showOverlay ENTFERNT - das native Overlay verdeckt die React App!
-            launchBlockOverlay(packageName);
+        if (!packageName.equals(lastWindowPackage)) {
+            lastWindowPackage = packageName;
+            for (WindowChangeListener listener : windowChangeListeners) {
+                listener.onWindowChanged(packageName);
+            }
         }
     }
 
-    private void showOverlay(String packageName) {
-        if (overlayView != null) return; // Already showing
-        
-        long now = System.currentTimeMillis();
-        
-        // Debounce: Don't re-show if recently blocked (within 500ms)
-        if (packageName.equals(lastBlockedPackage) && (now - lastBlockTime) < 500) {
-            return;
-        }
-        
-        lastBlockedPackage = packageName;
-        lastBlockTime = now;
-        currentOverlayPackage = packageName;
-        
-        try {
-            windowManager = (android.view.WindowManager) getSystemService(WINDOW_SERVICE);
-            
-            // Create fullscreen dark overlay
-            overlayLayout = new android.widget.FrameLayout(this);
-            overlayLayout.setBackgroundColor(0xFF0A0A0F); // Solid dark background
-            
-            // Content container
-            android.widget.LinearLayout content = new android.widget.LinearLayout(this);
-            content.setOrientation(android.widget.LinearLayout.VERTICAL);
-            content.setGravity(android.view.Gravity.CENTER);
-            content.setPadding(80, 0, 80, 0);
-            android.widget.FrameLayout.LayoutParams contentParams = new android.widget.FrameLayout.LayoutParams(
-                android.widget.FrameLayout.LayoutParams.MATCH_PARENT, 
-                android.widget.FrameLayout.LayoutParams.WRAP_CONTENT);
-            contentParams.gravity = android.view.Gravity.CENTER;
-            overlayLayout.addView(content, contentParams);
-
-            // Red X icon
-            android.widget.TextView icon = new android.widget.TextView(this);
-            icon.setText("⛔");
-            icon.setTextSize(48);
-            icon.setGravity(android.view.Gravity.CENTER);
-            content.addView(icon);
-
-            // BLOCKED Label
-            android.widget.TextView blockedLabel = new android.widget.TextView(this);
-            blockedLabel.setText("BLOCKED");
-            blockedLabel.setTextColor(0xFFEF4444); // Red
-            blockedLabel.setTextSize(24);
-            blockedLabel.setTypeface(null, android.graphics.Typeface.BOLD);
-            blockedLabel.setGravity(android.view.Gravity.CENTER);
-            blockedLabel.setPadding(0, 40, 0, 20);
-            content.addView(blockedLabel);
-
-            // Title
-            android.widget.TextView title = new android.widget.TextView(this);
-            title.setText("This app is blocked");
-            title.setTextColor(0xFFFFFFFF);
-            title.setTextSize(22);
-            title.setTypeface(null, android.graphics.Typeface.BOLD);
-            title.setGravity(android.view.Gravity.CENTER);
-            content.addView(title);
-
-            // Subtitle
-            android.widget.TextView subtitle = new android.widget.TextView(this);
-            subtitle.setText("Stay focused! You set this limit.\nPress the button to go home.");
-            subtitle.setTextColor(0x99FFFFFF);
-            subtitle.setTextSize(14);
-            subtitle.setGravity(android.view.Gravity.CENTER);
-            subtitle.setPadding(0, 20, 0, 60);
-            content.addView(subtitle);
-
-            // Exit Button
-            android.widget.Button exitBtn = new android.widget.Button(this);
-            exitBtn.setText("Exit App");
-            exitBtn.setBackgroundColor(0x33FFFFFF);
-            exitBtn.setTextColor(0xFFFFFFFF);
-            exitBtn.setTextSize(16);
-            exitBtn.setPadding(60, 24, 60, 24);
-            exitBtn.setAllCaps(false);
-            exitBtn.setOnClickListener(v -> {
-                performGlobalAction(GLOBAL_ACTION_HOME);
-                hideOverlay();
-            });
-            android.widget.LinearLayout.LayoutParams btnParams = new android.widget.LinearLayout.LayoutParams(
-                android.widget.LinearLayout.LayoutParams.MATCH_PARENT,
-                android.widget.LinearLayout.LayoutParams.WRAP_CONTENT);
-            content.addView(exitBtn, btnParams);
-
-            // Window Params - TYPE_ACCESSIBILITY_OVERLAY is stable on MIUI
-            android.view.WindowManager.LayoutParams params = new android.view.WindowManager.LayoutParams(
-                android.view.WindowManager.LayoutParams.MATCH_PARENT,
-                android.view.WindowManager.LayoutParams.MATCH_PARENT,
-                android.view.WindowManager.LayoutParams.TYPE_ACCESSIBILITY_OVERLAY,
-                android.view.WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
-                android.view.WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL |
-                android.view.WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN |
-                android.view.WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS,
-                android.graphics.PixelFormat.OPAQUE);
-            params.gravity = android.view.Gravity.CENTER;
-
-            windowManager.addView(overlayLayout, params);
-            overlayView = overlayLayout;
-            Log.d(TAG, "Native overlay shown for: " + packageName);
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error showing overlay: " + e.getMessage());
-            e.printStackTrace();
-        }
+    private void blockFromEngine(String packageName, BlockPolicyEngine.Decision decision) {
+        if (overlay == null) return;
+        // Usually the window event got there first and this is the same launch
+        if (!launchController.onBlockedAppEvent(packageName, System.currentTimeMillis())) return;
+        Log.d(TAG, "BLOCKED BY ENGINE: " + packageName + " (" + decision.type.jsName + ")");
+        overlay.show();
+        launchBlockOverlay(packageName, decision);
     }
-
+    
     private void hideOverlay() {
-        if (overlayView != null && windowManager != null) {
-            try {
-                windowManager.removeView(overlayView);
-                Log.d(TAG, "Overlay hidden");
-            } catch (Exception e) {
-                Log.e(TAG, "Error hiding overlay: " + e.getMessage());
-            }
+        if (overlay != null) {
+            overlay.hide();
         }
-        overlayView = null;
-        currentOverlayPackage = null;
+    }
+    
+    /**
+     * Called once the React Native block screen has painted - it takes over from the native overlay.
+     */
+    public void onBlockScreenReady() {
+        mainHandler.post(() -> {
+            launchController.onBlockScreenVisible();
+            hideOverlay();
+        });
     }
 
     @Override
@@ -230,14 +202,32 @@ public class BlockingAccessibilityService extends AccessibilityService {
     public void onDestroy() {
         super.onDestroy();
         hideOverlay();
+        EnforcementEngine engine = EnforcementEngine.getInstance(this);
+        engine.removePolicyListener(policyListener);
+        engine.removeDecisionListener(decisionListener);
+        try {
+            unregisterReceiver(packageChangeReceiver);
+        } catch (IllegalArgumentException ignored) {
+            // Never registered if we were destroyed before connecting
+        }
         instance = null;
+        // Nothing reports app switches any more - the engine's next check sees that and starts polling
+        engine.requestCheck();
         Log.d(TAG, "Accessibility Service destroyed");
     }
     
+    private void refreshLaunchers() {
+        try {
+            classifier.setLauncherPackages(PackageClassifier.resolveLauncherPackages(getPackageManager()));
+        } catch (Exception e) {
+            Log.e(TAG, "Error resolving launchers: " + e.getMessage());
+        }
+    }
+    
     /**
      * Launch the Blockd app with nice React Native overlay
      */
-    private void launchBlockOverlay(String blockedPackage) {
+    private void launchBlockOverlay(String blockedPackage, BlockPolicyEngine.Decision decision) {
         try {
             Intent intent = new Intent(this, MainActivity.class);
             // WICHTIG: Diese Flags holen die App nach vorne, auch aus dem Hintergrund
@@ -246,6 +236,10 @@ public class BlockingAccessibilityService extends AccessibilityService {
                            Intent.FLAG_ACTIVITY_CLEAR_TOP);
             intent.putExtra("blocked_package", blockedPackage);
             intent.putExtra("show_overlay", true);
+            intent.putExtra("block_type", decision.type.jsName);
+            intent.putExtra("remaining_minutes", decision.remainingMinutes);
+            intent.putExtra("remaining_days", decision.remainingDays);
+            intent.putExtra("daily_limit", decision.dailyLimitMinutes);
             startActivity(intent);
         } catch (Exception e) {
             Log.e(TAG, "Error launching block overlay: " + e.getMessage());
@@ -253,56 +247,25 @@ public class BlockingAccessibilityService extends AccessibilityService {
     }
     
     /**
-     * Load blocked apps from SharedPreferences
+     * The engine's policy changed - if the app we are blocking lost its rule, take the block screen down.
      */
-    public void loadBlockedApps() {
-        try {
-            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-            String json = prefs.getString(KEY_BLOCKED_APPS, "{}");
-            JSONObject obj = new JSONObject(json);
-            
-            blockedPackages.clear();
-            Iterator<String> keys = obj.keys();
-            while (keys.hasNext()) {
-                String pkg = keys.next();
-                JSONObject appData = obj.getJSONObject(pkg);
-                if (appData.optBoolean("isActive", true)) {
-                    blockedPackages.add(pkg);
-                }
-            }
-            
-            Log.d(TAG, "Loaded " + blockedPackages.size() + " blocked apps");
-        } catch (Exception e) {
-            Log.e(TAG, "Error loading blocked apps: " + e.getMessage());
+    private void onPolicyChanged(BlockPolicyEngine policy) {
+        String current = launchController.getBlockedPackage();
+        if (current != null && !policy.snapshot().contains(current)) {
+            launchController.onDismissed();
+            mainHandler.post(this::hideOverlay);
         }
     }
     
-    /**
-     * Add a package to the blocked list
-     */
-    public void addBlockedApp(String packageName) {
-        blockedPackages.add(packageName);
-        Log.d(TAG, "Added blocked app: " + packageName);
-    }
-    
-    /**
-     * Remove a package from the blocked list
-     */
-    public void removeBlockedApp(String packageName) {
-        blockedPackages.remove(packageName);
-        // If we remove the block for the current app, hide overlay immediately
-        if (overlayView != null) {
-             hideOverlay(); 
-             // Ideally we should check if current foreground is this package, but simpler to just hide
-        }
-        Log.d(TAG, "Removed blocked app: " + packageName);
+    public BlockLaunchController getLaunchController() {
+        return launchController;
     }
     
     /**
      * Check if a package is currently blocked
      */
     public boolean isBlocked(String packageName) {
-        return blockedPackages.contains(packageName);
+        return policy != null && policy.evaluate(packageName, System.currentTimeMillis()).isBlocking();
     }
 }
 
@@ -1,13 +1,9 @@
 package com.blockd;
 
 import android.app.Activity;
-import android.app.usage.UsageStats;
-import android.app.usage.UsageStatsManager;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
-import android.os.Handler;
-import android.os.Looper;
 import android.provider.Settings;
 import android.util.Log;
 
@@ -16,37 +12,28 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 public class BlockingModule extends ReactContextBaseJavaModule {
     private static final String TAG = "BlockingModule";
     private final ReactApplicationContext reactContext;
-    private Handler handler;
-    private Runnable monitorRunnable;
+    private final EnforcementEngine engine;
     private boolean isMonitoring = false;
     
-    // Map of blocked packages with their mode and remaining time
-    private Map<String, BlockedApp> blockedApps = new HashMap<>();
-    
-    private static class BlockedApp {
-        String mode; // "detox" or "limit"
-        long detoxEndTime; // Unix timestamp for detox end
-        int dailyLimitMinutes;
-        int usedTodayMinutes;
-        String lastResetDate;
-    }
+    // Decisions come from the shared EnforcementEngine loop; only transitions are forwarded to JS
+    private final BlockStateEmitter stateEmitter;
+    private final EnforcementEngine.DecisionListener decisionListener;
 
     public BlockingModule(ReactApplicationContext context) {
         super(context);
         this.reactContext = context;
-        this.handler = new Handler(Looper.getMainLooper());
+        this.engine = EnforcementEngine.getInstance(context);
+        this.stateEmitter = new BlockStateEmitter(engine.getLooper(), context.getPackageName(), this::emitTransition);
+        this.decisionListener = stateEmitter::onDecision;
     }
 
     @Override
@@ -84,27 +71,18 @@ public class BlockingModule extends ReactContextBaseJavaModule {
     public void startMonitoring() {
         if (isMonitoring) return;
         isMonitoring = true;
-        
-        monitorRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (isMonitoring) {
-                    checkCurrentApp();
-                    handler.postDelayed(this, 1000);
-                }
-            }
-        };
-        
-        handler.post(monitorRunnable);
+        engine.addDecisionListener(decisionListener);
+        engine.start(this);
         Log.d(TAG, "Started app monitoring");
     }
 
     @ReactMethod
     public void stopMonitoring() {
         isMonitoring = false;
-        if (monitorRunnable != null) {
-            handler.removeCallbacks(monitorRunnable);
-        }
+        engine.removeDecisionListener(decisionListener);
+        engine.stop(this);
+        // Re-announce the current state when monitoring resumes
+        stateEmitter.reset();
         Log.d(TAG, "Stopped app monitoring");
     }
 
@@ -118,18 +96,29 @@ public class BlockingModule extends ReactContextBaseJavaModule {
                 String blockedPkg = intent.getStringExtra("blocked_package");
                 
                 WritableMap params = Arguments.createMap();
+                String blockType = intent.getStringExtra("block_type");
                 params.putString("packageName", blockedPkg);
-                params.putString("blockType", "limit_active");
-                params.putInt("remainingMinutes", 0);
-                params.putInt("remainingDays", 0);
-                params.putInt("dailyLimit", 0);
+                params.putString("blockType", blockType != null ? blockType : "limit_active");
+                params.putInt("remainingMinutes", intent.getIntExtra("remaining_minutes", 0));
+                params.putInt("remainingDays", intent.getIntExtra("remaining_days", 0));
+                params.putInt("dailyLimit", intent.getIntExtra("daily_limit", 0));
                 
                 // Send event to React Native
                 sendEvent("onAppBlocked", params);
                 
+                // The RN block screen is up - drop the native fast-path overlay
+                BlockingAccessibilityService service = BlockingAccessibilityService.getInstance();
+                if (service != null) {
+                    service.onBlockScreenReady();
+                }
+                
                 // Clear the intent extras so we don't trigger again
                 intent.removeExtra("show_overlay");
                 intent.removeExtra("blocked_package");
+                intent.removeExtra("block_type");
+                intent.removeExtra("remaining_minutes");
+                intent.removeExtra("remaining_days");
+                intent.removeExtra("daily_limit");
                 
                 Log.d(TAG, "Initial launch detected for blocked app: " + blockedPkg);
                 promise.resolve(blockedPkg);
@@ -141,87 +130,33 @@ public class BlockingModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void addBlockedApp(String packageName, String mode, double detoxEndTime, int dailyLimitMinutes) {
-        BlockedApp app = new BlockedApp();
-        app.mode = mode;
-        app.detoxEndTime = (long) detoxEndTime;
-        app.dailyLimitMinutes = dailyLimitMinutes;
-        app.usedTodayMinutes = 0;
-        app.lastResetDate = getCurrentDate();
-        
-        blockedApps.put(packageName, app);
-        
-        // CRITICAL: Persist to SharedPreferences for AccessibilityService
-        persistBlockedApps();
-        
-        // Notify AccessibilityService if running
-        if (BlockingAccessibilityService.isRunning()) {
-            BlockingAccessibilityService.getInstance().addBlockedApp(packageName);
-        }
-        
+        // CRITICAL: The engine persists the rule; the AccessibilityService reads the same policy
+        engine.putRule(packageName, mode, (long) detoxEndTime, dailyLimitMinutes);
         Log.d(TAG, "Added blocked app: " + packageName + " mode: " + mode + " (persisted)");
     }
 
     @ReactMethod
     public void removeBlockedApp(String packageName) {
-        blockedApps.remove(packageName);
-        
-        // CRITICAL: Persist to SharedPreferences for AccessibilityService
-        persistBlockedApps();
-        
-        // Notify AccessibilityService if running
-        if (BlockingAccessibilityService.isRunning()) {
-            BlockingAccessibilityService.getInstance().removeBlockedApp(packageName);
-        }
-        
+        engine.removeRule(packageName);
         Log.d(TAG, "Removed blocked app: " + packageName + " (persisted)");
     }
-    
-    /**
-     * Persist blocked apps to SharedPreferences so AccessibilityService can read them
-     */
-    private void persistBlockedApps() {
-        try {
-            android.content.SharedPreferences prefs = reactContext.getSharedPreferences("BlockdBlockingPrefs", Context.MODE_PRIVATE);
-            org.json.JSONObject json = new org.json.JSONObject();
-            
-            for (Map.Entry<String, BlockedApp> entry : blockedApps.entrySet()) {
-                org.json.JSONObject appData = new org.json.JSONObject();
-                appData.put("mode", entry.getValue().mode);
-                appData.put("detoxEndTime", entry.getValue().detoxEndTime);
-                appData.put("dailyLimitMinutes", entry.getValue().dailyLimitMinutes);
-                appData.put("isActive", true);
-                json.put(entry.getKey(), appData);
-            }
-            
-            prefs.edit().putString("blocked_apps_json", json.toString()).apply();
-            Log.d(TAG, "Persisted " + blockedApps.size() + " apps to SharedPreferences");
-        } catch (Exception e) {
-            Log.e(TAG, "Error persisting blocked apps: " + e.getMessage());
-        }
-    }
 
     @ReactMethod
     public void updateUsage(String packageName, int minutesUsed) {
-        BlockedApp app = blockedApps.get(packageName);
-        if (app != null) {
-            String today = getCurrentDate();
-            if (!today.equals(app.lastResetDate)) {
-                app.usedTodayMinutes = 0;
-                app.lastResetDate = today;
-            }
-            app.usedTodayMinutes = minutesUsed;
-        }
+        // Usage is tracked natively by the EnforcementEngine now - kept for API compatibility
     }
+
     @ReactMethod
     public void getBlockedApps(Promise promise) {
         try {
             WritableMap result = Arguments.createMap();
-            for (Map.Entry<String, BlockedApp> entry : blockedApps.entrySet()) {
+            for (Map.Entry<String, BlockPolicyEngine.Rule> entry : engine.getPolicy().snapshot().asMap().entrySet()) {
+                BlockPolicyEngine.Rule rule = entry.getValue();
                 WritableMap appData = Arguments.createMap();
-                appData.putString("mode", entry.getValue().mode);
-                appData.putDouble("detoxEndTime", entry.getValue().detoxEndTime);
-                appData.putInt("dailyLimitMinutes", entry.getValue().dailyLimitMinutes);
-                appData.putInt("usedTodayMinutes", entry.getValue().usedTodayMinutes);
+                appData.putString("mode", rule.mode);
+                appData.putDouble("detoxEndTime", rule.detoxEndTime);
+                appData.putInt("dailyLimitMinutes", rule.dailyLimitMinutes);
+                appData.putInt("usedTodayMinutes", (int) (engine.getUsedTodayMs(entry.getKey()) / 60000));
                 result.putMap(entry.getKey(), appData);
             }
             promise.resolve(result);
@@ -241,83 +176,44 @@ public class BlockingModule extends ReactContextBaseJavaModule {
     }
 
 
-    private void checkCurrentApp() {
-        String currentPackage = getForegroundApp();
-        if (currentPackage == null || currentPackage.isEmpty()) return;
-        
-        // Don't block our own app
-        if (currentPackage.equals("com.blockd")) return;
-        
-        BlockedApp blockedApp = blockedApps.get(currentPackage);
-        if (blockedApp == null) return;
-        
-        boolean shouldBlock = false;
-        String blockType = "";
-        int remainingMinutes = 0;
-        int remainingDays = 0;
-        
-        if ("detox".equals(blockedApp.mode)) {
-            if (System.currentTimeMillis() < blockedApp.detoxEndTime) {
-                shouldBlock = true;
-                blockType = "detox";
-                remainingDays = (int) ((blockedApp.detoxEndTime - System.currentTimeMillis()) / (24 * 60 * 60 * 1000));
-            }
-        } else if ("limit".equals(blockedApp.mode)) {
-            // Get REAL usage from UsageStatsManager
-            int usedMinutesToday = getAppUsageToday(currentPackage);
-            
-            remainingMinutes = blockedApp.dailyLimitMinutes - usedMinutesToday;
-            
-            Log.d(TAG, "App: " + currentPackage + " used: " + usedMinutesToday + "m, limit: " + blockedApp.dailyLimitMinutes + "m, remaining: " + remainingMinutes + "m");
-            
-            if (remainingMinutes <= 0) {
-                shouldBlock = true;
-                blockType = "limit_exceeded";
-            } else {
-                blockType = "limit_active";
-            }
-        }
+    private void emitTransition(BlockStateEmitter.Transition transition, String currentPackage,
+                                BlockPolicyEngine.Decision decision) {
+        Log.d(TAG, "Block state " + transition.jsName + ": " + currentPackage + " (" + decision.type.jsName + ")");
         
         // Send event to React Native
-        if (shouldBlock || "limit_active".equals(blockType)) {
+        if (transition == BlockStateEmitter.Transition.LEFT) {
             WritableMap params = Arguments.createMap();
-            params.putString("packageName", currentPackage);
-            params.putString("blockType", blockType);
-            params.putInt("remainingMinutes", remainingMinutes);
-            params.putInt("remainingDays", remainingDays);
-            params.putInt("dailyLimit", blockedApp != null ? blockedApp.dailyLimitMinutes : 0);
-            
-            sendEvent("onAppBlocked", params);
+            params.putString("transition", transition.jsName);
+            sendEvent("onBlockCleared", params);
+            return;
         }
+        WritableMap params = blockStateToMap(currentPackage, decision);
+        params.putString("transition", transition.jsName);
+        sendEvent("onAppBlocked", params);
     }
     
-    private int getAppUsageToday(String packageName) {
-        try {
-            UsageStatsManager usm = (UsageStatsManager) reactContext.getSystemService(Context.USAGE_STATS_SERVICE);
-            
-            // Get start of today
-            java.util.Calendar calendar = java.util.Calendar.getInstance();
-            calendar.set(java.util.Calendar.HOUR_OF_DAY, 0);
-            calendar.set(java.util.Calendar.MINUTE, 0);
-            calendar.set(java.util.Calendar.SECOND, 0);
-            calendar.set(java.util.Calendar.MILLISECOND, 0);
-            long startOfDay = calendar.getTimeInMillis();
-            long now = System.currentTimeMillis();
-            
-            List<UsageStats> stats = usm.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, startOfDay, now);
-            
-            if (stats != null) {
-                for (UsageStats stat : stats) {
-                    if (stat.getPackageName().equals(packageName)) {
-                        long totalTimeMs = stat.getTotalTimeInForeground();
-                        return (int) (totalTimeMs / 60000); // Convert to minutes
-                    }
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting app usage: " + e.getMessage());
+    private static WritableMap blockStateToMap(String packageName, BlockPolicyEngine.Decision decision) {
+        WritableMap params = Arguments.createMap();
+        params.putString("packageName", packageName);
+        params.putString("blockType", decision.type.jsName);
+        params.putInt("remainingMinutes", decision.remainingMinutes);
+        params.putInt("remainingDays", decision.remainingDays);
+        params.putInt("dailyLimit", decision.dailyLimitMinutes);
+        return params;
+    }
+    
+    /**
+     * Pull the latest block state instead of waiting for the next transition. Null if nothing is restricted.
+     */
+    @ReactMethod
+    public void getCurrentBlockState(Promise promise) {
+        String packageName;
+        BlockPolicyEngine.Decision decision;
+        synchronized (stateEmitter) {
+            packageName = stateEmitter.getCurrentPackage();
+            decision = stateEmitter.getCurrentDecision();
         }
-        return 0;
+        promise.resolve(packageName != null ? blockStateToMap(packageName, decision) : null);
     }
 
     private void sendEvent(String eventName, WritableMap params) {
@@ -331,31 +227,8 @@ public class BlockingModule extends ReactContextBaseJavaModule {
     }
 
     private String getForegroundApp() {
-        String currentApp = "";
-        try {
-            UsageStatsManager usm = (UsageStatsManager) reactContext.getSystemService(Context.USAGE_STATS_SERVICE);
-            long time = System.currentTimeMillis();
-            
-            List<UsageStats> stats = usm.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, time - 10000, time);
-            
-            if (stats != null && !stats.isEmpty()) {
-                SortedMap<Long, UsageStats> sortedMap = new TreeMap<>();
-                for (UsageStats usageStats : stats) {
-                    sortedMap.put(usageStats.getLastTimeUsed(), usageStats);
-                }
-                if (!sortedMap.isEmpty()) {
-                    currentApp = sortedMap.get(sortedMap.lastKey()).getPackageName();
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting foreground app: " + e.getMessage());
-        }
-        return currentApp;
-    }
-
-    private String getCurrentDate() {
-        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd");
-        return sdf.format(new java.util.Date());
+        // As of the engine's last check - no UsageStats query on this thread
+        return engine.getForegroundPackage();
     }
     
     // =====================================================
@@ -372,6 +245,38 @@ public class BlockingModule extends ReactContextBaseJavaModule {
         }
     }
     
+    @ReactMethod
+    public void getBlockLaunchStats(Promise promise) {
+        WritableMap result = Arguments.createMap();
+        BlockingAccessibilityService service = BlockingAccessibilityService.getInstance();
+        if (service != null) {
+            BlockLaunchController controller = service.getLaunchController();
+            result.putString("state", controller.getState().name().toLowerCase());
+            result.putDouble("issuedLaunches", controller.getIssuedLaunches());
+            result.putDouble("suppressedLaunches", controller.getSuppressedLaunches());
+        } else {
+            result.putString("state", "idle");
+            result.putDouble("issuedLaunches", 0);
+            result.putDouble("suppressedLaunches", 0);
+        }
+        promise.resolve(result);
+    }
+    
+    @ReactMethod
+    public void getEngineTaskStats(Promise promise) {
+        // Time spent per task on the engine thread - work that used to run on main
+        WritableArray result = Arguments.createArray();
+        for (TaskTimer.Stat stat : engine.getTaskTimer().snapshot()) {
+            WritableMap entry = Arguments.createMap();
+            entry.putString("task", stat.task);
+            entry.putDouble("count", stat.count);
+            entry.putDouble("totalMs", stat.totalMs);
+            entry.putDouble("maxMs", stat.maxMs);
+            result.pushMap(entry);
+        }
+        promise.resolve(result);
+    }
+    
     @ReactMethod
     public void openAccessibilitySettings() {
         try {
@@ -433,16 +338,8 @@ public class BlockingModule extends ReactContextBaseJavaModule {
     
     @ReactMethod
     public void syncBlockedAppsToAccessibility() {
-        // Sync blocked apps to the accessibility service
-        if (BlockingAccessibilityService.isRunning()) {
-            BlockingAccessibilityService service = BlockingAccessibilityService.getInstance();
-            if (service != null) {
-                for (String pkg : blockedApps.keySet()) {
-                    service.addBlockedApp(pkg);
-                }
-                Log.d(TAG, "Synced " + blockedApps.size() + " apps to accessibility service");
-            }
-        }
+        // Nothing to copy any more - the accessibility service reads the engine's policy directly.
+        // Kept for API compatibility.
     }
     
     @ReactMethod
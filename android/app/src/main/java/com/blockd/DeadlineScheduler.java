@@ -0,0 +1,90 @@
+package com.blockd;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.Calendar;
+
+/**
+ * Single re-armable timer for the next moment a block decision can change on its own:
+ * the foreground app nearing or running out of its daily limit, a detox ending, or a limit resetting
+ * at midnight. Replaces polling once a second while nothing is about to happen.
+ */
+public class DeadlineScheduler {
+
+    // Fire slightly after the deadline so the re-check lands on the far side of it
+    private static final long DEADLINE_SLACK_MS = 50;
+
+    private final Handler handler;
+    private final Runnable callback;
+    private long deadline = 0; // wall-clock time the timer is armed for, 0 if idle
+    private long firedCount = 0;
+
+    public DeadlineScheduler(Handler handler, Runnable callback) {
+        this.handler = handler;
+        this.callback = () -> {
+            deadline = 0;
+            firedCount++;
+            callback.run();
+        };
+    }
+
+    /**
+     * Arm the timer for the next change of this decision, or cancel it if there is none.
+     */
+    public void schedule(BlockPolicyEngine.Decision decision, long now) {
+        long next = nextChange(decision, now);
+        if (next <= 0) {
+            cancel();
+            return;
+        }
+        if (next == deadline) return; // already armed for exactly this
+        handler.removeCallbacks(callback);
+        deadline = next;
+        handler.postAtTime(callback, SystemClock.uptimeMillis() + (next - now) + DEADLINE_SLACK_MS);
+    }
+
+    public void cancel() {
+        handler.removeCallbacks(callback);
+        deadline = 0;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public long getFiredCount() {
+        return firedCount;
+    }
+
+    /**
+     * Wall-clock time at which the decision stops being valid, or 0 if it never changes by itself.
+     */
+    static long nextChange(BlockPolicyEngine.Decision decision, long now) {
+        switch (decision.type) {
+            case DETOX:
+                return now + decision.remainingMs;
+            case LIMIT_ACTIVE:
+                // Wake up for the warning threshold first, then for the limit itself
+                if (decision.remainingMs > BlockStateEmitter.WARNING_THRESHOLD_MS) {
+                    return now + decision.remainingMs - BlockStateEmitter.WARNING_THRESHOLD_MS;
+                }
+                return now + decision.remainingMs;
+            case LIMIT_EXCEEDED:
+                return nextMidnight(now);
+            default:
+                return 0;
+        }
+    }
+
+    private static long nextMidnight(long now) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(now);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        cal.add(Calendar.DAY_OF_YEAR, 1);
+        return cal.getTimeInMillis();
+    }
+}
@@ -0,0 +1,350 @@
+package com.blockd;
+
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The one place that watches the foreground app and decides what is blocked.
+ * Owns the policy, the foreground tracker, the usage accumulator and the deadline timer,
+ * and runs a single monitoring loop for the whole process. AppBlockForegroundService keeps
+ * it alive; BlockingModule and BlockingAccessibilityService subscribe to it.
+ *
+ * All UsageStats queries, policy evaluation and persistence run on the "BlockdEngine" thread.
+ * Listeners are called on that thread too; anything that touches UI must post to main itself.
+ */
+public class EnforcementEngine {
+    private static final String TAG = "EnforcementEngine";
+    private static final long FALLBACK_POLL_MS = 1000;
+    private static final String LEGACY_PREFS_NAME = "BlockdBlockingPrefs";
+    private static final String LEGACY_KEY_BLOCKED_APPS = "blocked_apps_json";
+
+    /**
+     * Told about the decision for the foreground app after every check.
+     */
+    public interface DecisionListener {
+        void onDecision(String packageName, BlockPolicyEngine.Decision decision);
+    }
+
+    /**
+     * Told after every policy change, once it is persisted.
+     */
+    public interface PolicyListener {
+        void onPolicyChanged(BlockPolicyEngine policy);
+    }
+
+    private static EnforcementEngine instance;
+
+    private final Context context;
+    private final Handler handler; // engine thread
+    private final TaskTimer taskTimer = new TaskTimer();
+    private final BlockPolicyEngine policy;
+    private final ForegroundTracker foregroundTracker;
+    private final UsageAccumulator usageAccumulator;
+    private final DeadlineScheduler deadlineScheduler;
+    private final PolicyFile policyFile;
+    private long persistedPolicyGeneration = -1; // policy generation the file holds, -1 if unknown
+    private final CountDownLatch policyLoaded = new CountDownLatch(1);
+
+    private final Set<Object> owners = new HashSet<>();
+    private final CopyOnWriteArrayList<DecisionListener> decisionListeners = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<PolicyListener> policyListeners = new CopyOnWriteArrayList<>();
+    private boolean running = false;
+
+    private final Runnable checkRunnable = new Runnable() {
+        private final Runnable timedCheck = taskTimer.wrap("check", EnforcementEngine.this::checkForegroundApp);
+
+        @Override
+        public void run() {
+            if (!running) return;
+            timedCheck.run();
+            // Without the accessibility service nothing tells us about app switches - keep polling
+            if (!BlockingAccessibilityService.isRunning()) {
+                handler.postDelayed(this, FALLBACK_POLL_MS);
+            }
+        }
+    };
+
+    // Rule changes in quick succession are written and pushed out once
+    private final Runnable persistRunnable = taskTimer.wrap("persist", this::onPolicyChanged);
+
+    // An app switch seen by the accessibility service - re-check now instead of on the next tick
+    private final BlockingAccessibilityService.WindowChangeListener windowChangeListener = packageName -> requestCheck();
+
+    public static synchronized EnforcementEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new EnforcementEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private EnforcementEngine(Context context) {
+        this.context = context;
+        HandlerThread thread = new HandlerThread("BlockdEngine", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+        this.policyFile = new PolicyFile(context.getFilesDir());
+
+        UsageStatsManager usm = (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
+        UsageEventPipeline pipeline = UsageEventPipeline.getInstance(context);
+        this.foregroundTracker = new ForegroundTracker(pipeline);
+        this.usageAccumulator = UsageAccumulator.create(context);
+        this.foregroundTracker.setListener(usageAccumulator);
+        this.policy = new BlockPolicyEngine(pkg -> usageAccumulator.usedTodayMs(pkg, System.currentTimeMillis()));
+        this.deadlineScheduler = new DeadlineScheduler(handler, this::requestCheck);
+
+        // Disk and UsageStats work stays off the caller's thread. Queued ahead of the first
+        // check, so no transition is counted before the reconcile.
+        handler.post(taskTimer.wrap("load", () -> {
+            long now = System.currentTimeMillis();
+            usageAccumulator.restore(now);
+            usageAccumulator.reconcile(usm, now);
+            pipeline.addConsumer(foregroundTracker, now - ForegroundTracker.INITIAL_LOOKBACK_MS);
+            loadPolicy();
+            policyLoaded.countDown();
+        }));
+    }
+
+    /**
+     * The policy file is the only copy of the rules and this engine its only writer.
+     */
+    private void loadPolicy() {
+        if (!policyFile.exists()) {
+            migrateLegacyPolicy();
+        }
+        try {
+            PolicyFile.Contents contents = policyFile.readIfChanged(0);
+            if (contents != null) {
+                policy.replaceAll(contents.rules);
+                persistedPolicyGeneration = policy.generation();
+                Log.d(TAG, "Loaded " + contents.rules.size() + " blocked apps");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading policy: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One-time move from the old blocked_apps_json preference to the policy file
+     */
+    private void migrateLegacyPolicy() {
+        try {
+            SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+            String json = prefs.getString(LEGACY_KEY_BLOCKED_APPS, null);
+            if (json == null) return;
+            JSONObject obj = new JSONObject(json);
+
+            Map<String, BlockPolicyEngine.Rule> rules = new HashMap<>();
+            Iterator<String> keys = obj.keys();
+            while (keys.hasNext()) {
+                String pkg = keys.next();
+                JSONObject appData = obj.getJSONObject(pkg);
+                if (appData.optBoolean("isActive", true)) {
+                    rules.put(pkg, new BlockPolicyEngine.Rule(
+                        appData.optString("mode", BlockPolicyEngine.MODE_DETOX),
+                        appData.optLong("detoxEndTime", 0),
+                        appData.optInt("dailyLimitMinutes", 0)));
+                }
+            }
+
+            policyFile.write(rules, null);
+            prefs.edit().remove(LEGACY_KEY_BLOCKED_APPS).apply();
+            Log.d(TAG, "Migrated " + rules.size() + " blocked apps to policy file");
+        } catch (Exception e) {
+            Log.e(TAG, "Error migrating blocked apps: " + e.getMessage());
+        }
+    }
+
+    // =====================================================
+    // Lifecycle
+    // =====================================================
+
+    /**
+     * Keep the monitoring loop running on behalf of owner (the foreground service, the RN module).
+     */
+    public void start(Object owner) {
+        handler.post(() -> {
+            owners.add(owner);
+            if (running) return;
+            running = true;
+            BlockingAccessibilityService.addWindowChangeListener(windowChangeListener);
+            handler.post(checkRunnable);
+            Log.d(TAG, "Monitoring started");
+        });
+    }
+
+    /**
+     * Stop the loop once no owner needs it any more.
+     */
+    public void stop(Object owner) {
+        handler.post(() -> {
+            owners.remove(owner);
+            if (!running || !owners.isEmpty()) return;
+            running = false;
+            BlockingAccessibilityService.removeWindowChangeListener(windowChangeListener);
+            handler.removeCallbacks(checkRunnable);
+            deadlineScheduler.cancel();
+            usageAccumulator.checkpoint(System.currentTimeMillis());
+            Log.d(TAG, "Monitoring stopped");
+        });
+    }
+
+    public void addDecisionListener(DecisionListener listener) {
+        decisionListeners.addIfAbsent(listener);
+    }
+
+    public void removeDecisionListener(DecisionListener listener) {
+        decisionListeners.remove(listener);
+    }
+
+    public void addPolicyListener(PolicyListener listener) {
+        policyListeners.addIfAbsent(listener);
+    }
+
+    public void removePolicyListener(PolicyListener listener) {
+        policyListeners.remove(listener);
+    }
+
+    // =====================================================
+    // Policy
+    // =====================================================
+
+    public BlockPolicyEngine getPolicy() {
+        return policy;
+    }
+
+    /**
+     * The rule is visible to readers immediately; persisting and notifying happen on the engine thread.
+     */
+    public void putRule(String packageName, String mode, long detoxEndTime, int dailyLimitMinutes) {
+        awaitPolicyLoaded();
+        policy.putRule(packageName, mode, detoxEndTime, dailyLimitMinutes);
+        schedulePersist();
+    }
+
+    public void removeRule(String packageName) {
+        awaitPolicyLoaded();
+        if (policy.removeRule(packageName)) {
+            schedulePersist();
+        }
+    }
+
+    /**
+     * A change made before the file is loaded would be replaced by it - wait for the load.
+     * Only the first writer after startup can ever wait here.
+     */
+    private void awaitPolicyLoaded() {
+        if (Looper.myLooper() == handler.getLooper()) return;
+        try {
+            policyLoaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void schedulePersist() {
+        handler.removeCallbacks(persistRunnable);
+        handler.post(persistRunnable);
+    }
+
+    private void onPolicyChanged() {
+        persistPolicy();
+        for (PolicyListener listener : policyListeners) {
+            listener.onPolicyChanged(policy);
+        }
+        requestCheck();
+    }
+
+    private void persistPolicy() {
+        try {
+            BlockPolicyEngine.Snapshot snapshot = policy.snapshot();
+            // The file logs just what changed since it was last written
+            List<BlockPolicyEngine.Change> changes = persistedPolicyGeneration >= 0
+                ? snapshot.changesSince(persistedPolicyGeneration) : null;
+            long generation = policyFile.write(snapshot.asMap(), changes);
+            persistedPolicyGeneration = snapshot.generation;
+            Log.d(TAG, "Persisted " + snapshot.size() + " apps to policy file (generation " + generation + ")");
+        } catch (Exception e) {
+            Log.e(TAG, "Error persisting policy: " + e.getMessage());
+        }
+    }
+
+    // =====================================================
+    // Monitoring
+    // =====================================================
+
+    /**
+     * Re-check soon, e.g. after an app switch, a policy change or a deadline.
+     */
+    public void requestCheck() {
+        handler.removeCallbacks(checkRunnable);
+        handler.post(checkRunnable);
+    }
+
+    private void checkForegroundApp() {
+        long now = System.currentTimeMillis();
+        String currentPackage = foregroundTracker.update(now);
+        if (currentPackage.isEmpty()) {
+            deadlineScheduler.cancel();
+            return;
+        }
+        // Never block our own app - listeners still hear about it and decide what it means
+        if (currentPackage.equals(context.getPackageName())) {
+            deadlineScheduler.cancel();
+            for (DecisionListener listener : decisionListeners) {
+                listener.onDecision(currentPackage, BlockPolicyEngine.Decision.NONE);
+            }
+            return;
+        }
+
+        BlockPolicyEngine.Decision decision = policy.evaluate(currentPackage, now);
+        // Wake up exactly when this app's limit runs out or its detox ends
+        deadlineScheduler.schedule(decision, now);
+
+        for (DecisionListener listener : decisionListeners) {
+            listener.onDecision(currentPackage, decision);
+        }
+    }
+
+    /**
+     * The foreground app as of the engine's last check ("" if unknown). Never queries UsageStats
+     * on the caller's thread.
+     */
+    public String getForegroundPackage() {
+        return foregroundTracker.getForegroundPackage();
+    }
+
+    /**
+     * Today's foreground time as of the engine's last check, plus the open session up to now.
+     */
+    public long getUsedTodayMs(String packageName) {
+        return usageAccumulator.usedTodayMs(packageName, System.currentTimeMillis());
+    }
+
+    /**
+     * Looper of the engine thread, for helpers that want to run alongside the checks.
+     */
+    public Looper getLooper() {
+        return handler.getLooper();
+    }
+
+    public TaskTimer getTaskTimer() {
+        return taskTimer;
+    }
+}
@@ -0,0 +1,80 @@
+package com.blockd;
+
+import android.app.usage.UsageEvents;
+
+/**
+ * Tracks the foreground app from UsageEvents instead of a full queryUsageStats per tick.
+ * Events come from the shared UsageEventPipeline, which only reads what happened since its
+ * previous read - usually nothing.
+ */
+public class ForegroundTracker implements UsageEventPipeline.Consumer {
+    /**
+     * Told when an app's activity resumes, and with null when it pauses or the screen turns off.
+     */
+    public interface Listener {
+        void onForegroundChanged(String packageName, long timestamp);
+    }
+
+    // How far back the first update looks for the app that is currently resumed
+    public static final long INITIAL_LOOKBACK_MS = 60 * 60 * 1000L;
+
+    private final UsageEventPipeline pipeline;
+
+    private String foregroundPackage = "";
+    private long foregroundSince = 0;
+    private String activePackage = null; // resumed and not yet paused
+    private Listener listener;
+
+    public ForegroundTracker(UsageEventPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Consume events up to now and return the current foreground package ("" if unknown).
+     */
+    public String update(long now) {
+        pipeline.ingest(now);
+        return getForegroundPackage();
+    }
+
+    @Override
+    public synchronized void onEvents(UsageEventPipeline.EventBuffer events) {
+        for (int i = 0; i < events.size(); i++) {
+            long timestamp = events.timestamp(i);
+            // ACTIVITY_RESUMED (== MOVE_TO_FOREGROUND). A pause is always followed by the next
+            // resume, so the last resumed app stays foreground until something else resumes.
+            int type = events.type(i);
+            if (type == UsageEvents.Event.MOVE_TO_FOREGROUND) {
+                String pkg = events.packageName(i);
+                if (!pkg.equals(foregroundPackage)) {
+                    foregroundPackage = pkg;
+                    foregroundSince = timestamp;
+                }
+                setActive(pkg, timestamp);
+            } else if (type == UsageEvents.Event.MOVE_TO_BACKGROUND) {
+                if (events.packageName(i).equals(activePackage)) setActive(null, timestamp);
+            } else if (type == UsageEvents.Event.SCREEN_NON_INTERACTIVE) {
+                setActive(null, timestamp);
+            }
+        }
+    }
+    private void setActive(String packageName, long timestamp) {
+        if (packageName == null ? activePackage == null : packageName.equals(activePackage)) return;
+        activePackage = packageName;
+        if (listener != null) {
+            listener.onForegroundChanged(packageName, timestamp);
+        }
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized String getForegroundPackage() {
+        return foregroundPackage;
+    }
+
+    public synchronized long getForegroundSince() {
+        return foregroundSince;
+    }
+}
@@ -0,0 +1,101 @@
+package com.blockd;
+
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps a package name to what the accessibility service should do with it.
+ * Launchers are resolved from PackageManager instead of guessed from the package name,
+ * and every verdict is computed once and cached until the launchers or the policy change.
+ *
+ * Only the event thread touches the cache: a policy change is noticed through the snapshot
+ * generation on the next classify() instead of writers clearing the cache from another thread.
+ */
+public class PackageClassifier {
+
+    public enum Verdict {
+        IGNORE,   // Blockd itself
+        LAUNCHER, // Home screen - hide any overlay
+        BLOCKED,  // Has a block policy
+        ALLOWED   // Everything else
+    }
+
+    private final String selfPackage;
+    private final BlockPolicyEngine policy;
+    private Set<String> launcherPackages = Collections.emptySet();
+
+    // Keys are interned so repeated events for the same app hit the same entry
+    private final Map<String, Verdict> verdicts = new HashMap<>();
+    private long verdictGeneration = -1;
+
+    public PackageClassifier(String selfPackage, BlockPolicyEngine policy) {
+        this.selfPackage = selfPackage;
+        this.policy = policy;
+    }
+
+    public Verdict classify(String packageName) {
+        BlockPolicyEngine.Snapshot snapshot = policy.snapshot();
+        if (snapshot.generation != verdictGeneration) {
+            verdicts.clear();
+            verdictGeneration = snapshot.generation;
+        }
+        Verdict verdict = verdicts.get(packageName);
+        if (verdict == null) {
+            verdict = compute(packageName, snapshot);
+            verdicts.put(packageName.intern(), verdict);
+        }
+        return verdict;
+    }
+
+    private Verdict compute(String packageName, BlockPolicyEngine.Snapshot snapshot) {
+        if (packageName.equals(selfPackage)) return Verdict.IGNORE;
+        // A launcher is never blocked, even if it ended up in the policy
+        if (launcherPackages.contains(packageName)) return Verdict.LAUNCHER;
+        if (snapshot.contains(packageName)) return Verdict.BLOCKED;
+        return Verdict.ALLOWED;
+    }
+
+    /**
+     * Must be called on the event thread.
+     */
+    public void setLauncherPackages(Set<String> packages) {
+        launcherPackages = new HashSet<>(packages);
+        verdicts.clear();
+    }
+
+    public int cachedVerdictCount() {
+        return verdicts.size();
+    }
+
+    /**
+     * Resolve every package that can act as the home screen, plus the current default.
+     */
+    public static Set<String> resolveLauncherPackages(PackageManager pm) {
+        Set<String> result = new HashSet<>();
+        Intent homeIntent = new Intent(Intent.ACTION_MAIN);
+        homeIntent.addCategory(Intent.CATEGORY_HOME);
+
+        List<ResolveInfo> homes = pm.queryIntentActivities(homeIntent, 0);
+        for (ResolveInfo info : homes) {
+            // Settings registers a negative-priority FallbackHome for boot - that's not a launcher
+            if (info.activityInfo == null || info.priority < 0) continue;
+            result.add(info.activityInfo.packageName);
+        }
+
+        ResolveInfo defaultHome = pm.resolveActivity(homeIntent, PackageManager.MATCH_DEFAULT_ONLY);
+        // "android" means no default is set and the chooser would be shown
+        if (defaultHome != null && defaultHome.activityInfo != null
+                && !"android".equals(defaultHome.activityInfo.packageName)) {
+            result.add(defaultHome.activityInfo.packageName);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,242 @@
+package com.blockd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary store for the block policy, replacing the blocked_apps_json preference.
+ *
+ * Layout (big endian):
+ *   int magic 'BLKP' | int format | long generation | int count | int logOffset
+ *   count x { short nameLength | name UTF-8 | byte mode | long detoxEndTime | int dailyLimitMinutes }
+ *   at logOffset: long logBase | int logCount
+ *   logCount x { long generation | short nameLength | name UTF-8 | byte mode | long detoxEndTime | int dailyLimitMinutes }
+ *
+ * The log holds the changes of the last few writes (mode REMOVED for a removal), so a reader
+ * that already has generation logBase or later applies just those instead of parsing every rule.
+ *
+ * Writes go to a temp file which is fsynced and renamed over the real one, so a reader in
+ * any process sees either the old or the new file, never a partial one. Reads map the file
+ * and check the generation in the header first; an unchanged file costs a 24-byte read.
+ */
+public class PolicyFile {
+    public static final String FILE_NAME = "block_policy.bin";
+
+    private static final int MAGIC = 0x424C4B50; // "BLKP"
+    private static final int FORMAT = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+    private static final int MAX_LOG_CHANGES = 64;
+
+    private static final byte MODE_DETOX = 0;
+    private static final byte MODE_LIMIT = 1;
+    private static final byte MODE_REMOVED = 2;
+
+    public static final class Contents {
+        public final long generation;
+        public final Map<String, BlockPolicyEngine.Rule> rules;
+        public final List<BlockPolicyEngine.Change> changes; // since the known generation, null after a full read
+
+        Contents(long generation, Map<String, BlockPolicyEngine.Rule> rules, List<BlockPolicyEngine.Change> changes) {
+            this.generation = generation;
+            this.rules = rules;
+            this.changes = changes;
+        }
+    }
+
+    private final File file;
+
+    // What we last wrote or read. The generation only ever moves forward, even past a bad header.
+    private long generation = 0;
+    private Map<String, BlockPolicyEngine.Rule> rules = null;
+
+    // Changes of the last writes, tagged with the generation that wrote them
+    private final ArrayDeque<BlockPolicyEngine.Change> log = new ArrayDeque<>();
+    private long logBase = 0;
+
+    public PolicyFile(File dir) {
+        this.file = new File(dir, FILE_NAME);
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Generation stored in the header, or 0 if there is no valid file.
+     */
+    public long readGeneration() {
+        if (!file.exists()) return 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < HEADER_SIZE) return 0;
+            if (raf.readInt() != MAGIC || raf.readInt() != FORMAT) return 0;
+            return raf.readLong();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Read the policy unless its generation equals knownGeneration. Returns null when the
+     * file is unchanged, missing, truncated or not a policy file of this format, and throws
+     * only when the file cannot be read at all. When knownGeneration is what this instance last
+     * saw and the file's log still reaches back to it, only the logged changes are read.
+     */
+    public synchronized Contents readIfChanged(long knownGeneration) throws IOException {
+        if (!file.exists()) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) return null;
+
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != MAGIC || buf.getInt() != FORMAT) return null;
+            long fileGeneration = buf.getLong();
+            if (fileGeneration == knownGeneration) return null;
+            int count = buf.getInt();
+            int logOffset = buf.getInt();
+
+            if (rules != null && knownGeneration == generation && knownGeneration > 0) {
+                buf.position(logOffset);
+                long fileLogBase = buf.getLong();
+                if (fileLogBase <= knownGeneration && knownGeneration < fileGeneration) {
+                    int logCount = buf.getInt();
+                    List<BlockPolicyEngine.Change> changes = new ArrayList<>();
+                    Map<String, BlockPolicyEngine.Rule> updated = new HashMap<>(rules);
+                    for (int i = 0; i < logCount; i++) {
+                        long changeGeneration = buf.getLong();
+                        String pkg = readName(buf);
+                        BlockPolicyEngine.Rule rule = readRule(buf);
+                        if (changeGeneration <= knownGeneration) continue;
+                        changes.add(new BlockPolicyEngine.Change(changeGeneration, pkg, rule));
+                        if (rule == null) updated.remove(pkg); else updated.put(pkg, rule);
+                    }
+                    rules = updated;
+                    generation = fileGeneration;
+                    return new Contents(fileGeneration, new HashMap<>(updated), changes);
+                }
+                buf.position(HEADER_SIZE);
+            }
+
+            Map<String, BlockPolicyEngine.Rule> read = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String pkg = readName(buf);
+                read.put(pkg, readRule(buf));
+            }
+            rules = read;
+            generation = Math.max(generation, fileGeneration);
+            log.clear();
+            logBase = fileGeneration;
+            return new Contents(fileGeneration, new HashMap<>(read), null);
+        }
+    }
+
+    private static String readName(ByteBuffer buf) {
+        byte[] name = new byte[buf.getShort() & 0xFFFF];
+        buf.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The rule at the buffer's position, or null for a logged removal.
+     */
+    private static BlockPolicyEngine.Rule readRule(ByteBuffer buf) {
+        byte mode = buf.get();
+        long detoxEndTime = buf.getLong();
+        int dailyLimitMinutes = buf.getInt();
+        if (mode == MODE_REMOVED) return null;
+        return new BlockPolicyEngine.Rule(
+            mode == MODE_LIMIT ? BlockPolicyEngine.MODE_LIMIT : BlockPolicyEngine.MODE_DETOX,
+            detoxEndTime, dailyLimitMinutes);
+    }
+
+    /**
+     * Atomically replace the file. changes are what turned the last written (or read) rules into
+     * these ones, or null if unknown - the log then starts over. Returns the generation that was written.
+     */
+    public synchronized long write(Map<String, BlockPolicyEngine.Rule> newRules, List<BlockPolicyEngine.Change> changes) throws IOException {
+        long onDisk = readGeneration();
+        long next = Math.max(generation, onDisk) + 1;
+
+        // Deltas only make sense on top of the file we know
+        ArrayDeque<BlockPolicyEngine.Change> nextLog = new ArrayDeque<>();
+        long nextLogBase = next;
+        if (changes != null && rules != null && onDisk == generation) {
+            nextLog.addAll(log);
+            nextLogBase = logBase;
+            for (BlockPolicyEngine.Change change : changes) {
+                nextLog.addLast(new BlockPolicyEngine.Change(next, change.packageName, change.rule));
+            }
+            while (nextLog.size() > MAX_LOG_CHANGES) {
+                nextLogBase = nextLog.removeFirst().generation;
+            }
+        }
+
+        List<Map.Entry<String, BlockPolicyEngine.Rule>> entries = new ArrayList<>(newRules.entrySet());
+        byte[][] names = new byte[entries.size()][];
+        int size = HEADER_SIZE;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = entries.get(i).getKey().getBytes(StandardCharsets.UTF_8);
+            size += 2 + names[i].length + 1 + 8 + 4;
+        }
+        int logOffset = size;
+        List<byte[]> logNames = new ArrayList<>(nextLog.size());
+        size += 8 + 4;
+        for (BlockPolicyEngine.Change change : nextLog) {
+            byte[] logName = change.packageName.getBytes(StandardCharsets.UTF_8);
+            logNames.add(logName);
+            size += 8 + 2 + logName.length + 1 + 8 + 4;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(MAGIC).putInt(FORMAT).putLong(next).putInt(names.length).putInt(logOffset);
+        for (int i = 0; i < names.length; i++) {
+            putEntry(buf, names[i], entries.get(i).getValue());
+        }
+        buf.putLong(nextLogBase).putInt(nextLog.size());
+        int i = 0;
+        for (BlockPolicyEngine.Change change : nextLog) {
+            buf.putLong(change.generation);
+            putEntry(buf, logNames.get(i++), change.rule);
+        }
+        buf.flip();
+
+        File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            while (buf.hasRemaining()) channel.write(buf);
+            channel.force(true);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not rename " + tmp + " to " + file);
+        }
+        generation = next;
+        rules = new HashMap<>(newRules);
+        log.clear();
+        log.addAll(nextLog);
+        logBase = nextLogBase;
+        return next;
+    }
+
+    private static void putEntry(ByteBuffer buf, byte[] name, BlockPolicyEngine.Rule rule) {
+        buf.putShort((short) name.length);
+        buf.put(name);
+        if (rule == null) {
+            buf.put(MODE_REMOVED).putLong(0).putInt(0);
+            return;
+        }
+        buf.put(BlockPolicyEngine.MODE_LIMIT.equals(rule.mode) ? MODE_LIMIT : MODE_DETOX);
+        buf.putLong(rule.detoxEndTime);
+        buf.putInt(rule.dailyLimitMinutes);
+    }
+}
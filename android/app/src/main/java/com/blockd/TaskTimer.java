@@ -0,0 +1,71 @@
+package com.blockd;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-task execution time for work run on the engine thread, so we can see how much
+ * time the checks, persistence and UsageStats queries take - all of which used to run on main.
+ */
+public class TaskTimer {
+
+    public static final class Stat {
+        public final String task;
+        public final long count;
+        public final double totalMs;
+        public final double maxMs;
+
+        Stat(String task, long count, long totalNanos, long maxNanos) {
+            this.task = task;
+            this.count = count;
+            this.totalMs = totalNanos / 1e6;
+            this.maxMs = maxNanos / 1e6;
+        }
+    }
+
+    private static final class Entry {
+        long count;
+        long totalNanos;
+        long maxNanos;
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Wrap a task so every run of it is recorded under name.
+     */
+    public Runnable wrap(String name, Runnable task) {
+        return () -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            try {
+                task.run();
+            } finally {
+                record(name, SystemClock.elapsedRealtimeNanos() - start);
+            }
+        };
+    }
+
+    public synchronized void record(String name, long nanos) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(name, entry);
+        }
+        entry.count++;
+        entry.totalNanos += nanos;
+        if (nanos > entry.maxNanos) entry.maxNanos = nanos;
+    }
+
+    public synchronized List<Stat> snapshot() {
+        List<Stat> stats = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            stats.add(new Stat(e.getKey(), entry.count, entry.totalNanos, entry.maxNanos));
+        }
+        return stats;
+    }
+}
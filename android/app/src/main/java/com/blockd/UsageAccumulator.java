@@ -0,0 +1,208 @@
+package com.blockd;
+
+import android.app.usage.UsageStats;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process per-app foreground time for the current day, fed by ForegroundTracker transitions.
+ * Limit checks read a counter instead of querying UsageStats from midnight every second, and
+ * get millisecond precision instead of whole minutes.
+ *
+ * Packages are mapped to small int ids once; totals live in a long[] indexed by id. The day's
+ * totals are checkpointed to disk now and then. After a process restart they are reconciled with
+ * UsageStats once, which covers any time spent while we weren't running.
+ */
+public class UsageAccumulator implements ForegroundTracker.Listener {
+    private static final String TAG = "UsageAccumulator";
+    private static final String CHECKPOINT_FILE = "usage_today.bin";
+    private static final long CHECKPOINT_INTERVAL_MS = 60 * 1000L;
+
+    private final File checkpointFile;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[64];
+    private long[] totals = new long[64];
+    private int count = 0;
+
+    private long dayStart;
+    private long nextDayStart;
+    private int activeId = -1; // app whose session is open, or -1
+    private long sessionStart = 0;
+    private long floorTime = 0; // transitions before this are already covered by UsageStats
+    private long lastCheckpoint = 0;
+
+    /**
+     * Empty accumulator backed by the app's checkpoint file. Call restore() and then reconcile()
+     * once before feeding it, off the main thread - they read the file and query UsageStats.
+     */
+    public static UsageAccumulator create(Context context) {
+        return new UsageAccumulator(new File(context.getFilesDir(), CHECKPOINT_FILE));
+    }
+
+    UsageAccumulator(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+        setDay(System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized void onForegroundChanged(String packageName, long timestamp) {
+        // Sessions that started before the reconcile are already in the UsageStats totals
+        long at = Math.max(timestamp, floorTime);
+        rollDayIfNeeded(at);
+        closeSession(at);
+        if (packageName != null) {
+            activeId = idFor(packageName);
+            sessionStart = at;
+        }
+        if (at - lastCheckpoint >= CHECKPOINT_INTERVAL_MS) {
+            checkpoint(at);
+        }
+    }
+
+    /**
+     * Foreground time today including the session that is still open.
+     */
+    public synchronized long usedTodayMs(String packageName, long now) {
+        rollDayIfNeeded(now);
+        Integer id = ids.get(packageName);
+        if (id == null) return 0;
+        long total = totals[id];
+        if (id == activeId && now > sessionStart) {
+            total += now - sessionStart;
+        }
+        return total;
+    }
+
+    /**
+     * The app whose session is open right now, or null.
+     */
+    public synchronized String getActivePackage() {
+        return activeId >= 0 ? names[activeId] : null;
+    }
+
+    private void closeSession(long at) {
+        if (activeId >= 0 && at > sessionStart) {
+            totals[activeId] += at - sessionStart;
+        }
+        activeId = -1;
+        sessionStart = at;
+    }
+
+    private void rollDayIfNeeded(long now) {
+        if (now < nextDayStart) return;
+        int carried = activeId;
+        // Credit the open session up to midnight, then start the new day with empty totals
+        closeSession(nextDayStart);
+        Arrays.fill(totals, 0, count, 0);
+        setDay(now);
+        if (carried >= 0) {
+            activeId = carried;
+            sessionStart = dayStart;
+        }
+    }
+
+    private void setDay(long now) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(now);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        dayStart = cal.getTimeInMillis();
+        cal.add(Calendar.DAY_OF_YEAR, 1);
+        nextDayStart = cal.getTimeInMillis();
+    }
+
+    private int idFor(String packageName) {
+        Integer id = ids.get(packageName);
+        if (id != null) return id;
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            totals = Arrays.copyOf(totals, count * 2);
+        }
+        names[count] = packageName;
+        totals[count] = 0;
+        ids.put(packageName, count);
+        return count++;
+    }
+
+    /**
+     * Take the larger of our total and the system's for every app used today. Run once after start.
+     */
+    synchronized void reconcile(UsageStatsManager usm, long now) {
+        try {
+            List<UsageStats> stats = usm.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, dayStart, now);
+            if (stats != null) {
+                for (UsageStats stat : stats) {
+                    // Daily buckets can start before midnight; only trust ones that belong to today
+                    if (stat.getLastTimeUsed() < dayStart) continue;
+                    int id = idFor(stat.getPackageName());
+                    totals[id] = Math.max(totals[id], stat.getTotalTimeInForeground());
+                }
+            }
+            floorTime = now;
+            Log.d(TAG, "Reconciled " + count + " apps with UsageStats");
+        } catch (Exception e) {
+            Log.e(TAG, "Error reconciling with UsageStats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write today's totals (including the open session) to disk.
+     */
+    public synchronized void checkpoint(long now) {
+        File tmp = new File(checkpointFile.getParentFile(), CHECKPOINT_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeLong(dayStart);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                long total = totals[i];
+                if (i == activeId && now > sessionStart) total += now - sessionStart;
+                out.writeUTF(names[i]);
+                out.writeLong(total);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing usage checkpoint: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(checkpointFile)) {
+            Log.e(TAG, "Could not replace usage checkpoint");
+            return;
+        }
+        lastCheckpoint = now;
+    }
+
+    /**
+     * Pick up today's totals from the last checkpoint.
+     */
+    synchronized void restore(long now) {
+        if (!checkpointFile.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+            if (in.readLong() != dayStart) return; // yesterday's numbers
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                String pkg = in.readUTF();
+                totals[idFor(pkg)] = in.readLong();
+            }
+            lastCheckpoint = now;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading usage checkpoint: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.blockd;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The one reader of UsageEvents in the process. Each ingest reads the events since the previous
+ * one into a reusable buffer and hands that batch to every registered consumer - the foreground
+ * tracker, the unlock counter, the hourly buckets. A new metric is a new consumer, not another
+ * queryEvents over the same range.
+ *
+ * Consumers are called with the pipeline locked, in event order. A consumer that needs fresh
+ * data calls ingest() before taking its own lock, never while holding it.
+ *
+ * Events can be recorded a little after their timestamp, so each read starts again at the newest
+ * timestamp already handed out (or a short overlap before now when nothing new came in). The
+ * events at that timestamp that were handed out already are dropped, so every consumer sees
+ * each event once and never one older than what it has seen.
+ */
+public class UsageEventPipeline {
+    private static final String TAG = "UsageEventPipeline";
+    private static final long OVERLAP_MS = 2000;
+
+    public interface Consumer {
+        void onEvents(EventBuffer events);
+    }
+
+    /**
+     * One batch of events, oldest first. Only valid during onEvents - the arrays are reused.
+     */
+    public static final class EventBuffer {
+        private int size = 0;
+        private int[] types = new int[256];
+        private long[] timestamps = new long[256];
+        private String[] packages = new String[256];
+
+        public int size() {
+            return size;
+        }
+
+        public int type(int i) {
+            return types[i];
+        }
+
+        public long timestamp(int i) {
+            return timestamps[i];
+        }
+
+        public String packageName(int i) {
+            return packages[i];
+        }
+
+        void clear() {
+            // Drop package references so a large batch doesn't pin them until the next one
+            Arrays.fill(packages, 0, size, null);
+            size = 0;
+        }
+
+        /**
+         * Drop the events that are also in delivered, one for one. All of delivered shares one
+         * timestamp, so only that timestamp is compared.
+         */
+        void removeAll(EventBuffer delivered) {
+            if (delivered.size == 0) return;
+            long time = delivered.timestamps[0];
+            List<String> pending = new ArrayList<>(delivered.size);
+            for (int i = 0; i < delivered.size; i++) pending.add(delivered.key(i));
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (timestamps[i] == time && pending.remove(key(i))) continue;
+                types[kept] = types[i];
+                timestamps[kept] = timestamps[i];
+                packages[kept] = packages[i];
+                kept++;
+            }
+            Arrays.fill(packages, kept, size, null);
+            size = kept;
+        }
+
+        private String key(int i) {
+            return timestamps[i] + "/" + types[i] + "/" + packages[i];
+        }
+
+        void add(int type, long timestamp, String packageName) {
+            if (size == types.length) {
+                types = Arrays.copyOf(types, size * 2);
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                packages = Arrays.copyOf(packages, size * 2);
+            }
+            types[size] = type;
+            timestamps[size] = timestamp;
+            packages[size] = packageName;
+            size++;
+        }
+    }
+
+    private static UsageEventPipeline instance;
+
+    private final UsageStatsManager usageStatsManager;
+    private final UsageEvents.Event event = new UsageEvents.Event(); // reused for every read
+    private final EventBuffer buffer = new EventBuffer();
+    private final CopyOnWriteArrayList<Consumer> consumers = new CopyOnWriteArrayList<>();
+
+    private long cursor = 0; // where the next read starts, 0 before the first ingest
+    private final EventBuffer deliveredAtCursor = new EventBuffer(); // handed out already, read again next time
+    private long firstReadFrom = Long.MAX_VALUE; // earliest start any consumer asked for
+
+    private long ingests = 0;
+    private long totalEvents = 0;
+    private long totalReadNanos = 0;
+    private int lastBatchSize = 0;
+
+    public static synchronized UsageEventPipeline getInstance(Context context) {
+        if (instance == null) {
+            instance = new UsageEventPipeline(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private UsageEventPipeline(Context context) {
+        this.usageStatsManager = (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
+    }
+
+    /**
+     * Register consumer with the events from since on. If the pipeline is already past since,
+     * the missed range is read once for this consumer alone.
+     */
+    public synchronized void addConsumer(Consumer consumer, long since) {
+        if (cursor == 0) {
+            firstReadFrom = Math.min(firstReadFrom, since);
+        } else if (since < cursor && read(since, cursor)) {
+            // Plus what the others were handed at cursor itself
+            for (int i = 0; i < deliveredAtCursor.size; i++) {
+                buffer.add(deliveredAtCursor.types[i], cursor, deliveredAtCursor.packages[i]);
+            }
+            consumer.onEvents(buffer);
+            buffer.clear();
+        }
+        consumers.add(consumer);
+    }
+
+    public void removeConsumer(Consumer consumer) {
+        consumers.remove(consumer);
+    }
+
+    /**
+     * Read the events up to now and hand them to every consumer.
+     */
+    public synchronized void ingest(long now) {
+        long from = cursor > 0 ? cursor : Math.min(firstReadFrom, now);
+        if (now <= from) return;
+
+        if (!read(from, now)) return;
+        // queryEvents' end is exclusive. Next time start at the newest event seen, or a little
+        // before now, so anything recorded late at or after that point is still picked up.
+        // Nothing handed out is newer than cursor, so only the events at it come round twice.
+        buffer.removeAll(deliveredAtCursor);
+        long last = buffer.size > 0 ? buffer.timestamps[buffer.size - 1] : from;
+        long next = Math.max(last, Math.max(from, now - OVERLAP_MS));
+        if (next != from) deliveredAtCursor.clear();
+        for (int i = 0; i < buffer.size; i++) {
+            if (buffer.timestamps[i] == next) deliveredAtCursor.add(buffer.types[i], next, buffer.packages[i]);
+        }
+        cursor = next;
+        lastBatchSize = buffer.size;
+        if (buffer.size > 0) {
+            for (Consumer consumer : consumers) {
+                consumer.onEvents(buffer);
+            }
+        }
+        buffer.clear();
+    }
+
+    private boolean read(long from, long to) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            UsageEvents events = usageStatsManager.queryEvents(from, to);
+            if (events == null) return false;
+            while (events.hasNextEvent()) {
+                events.getNextEvent(event);
+                buffer.add(event.getEventType(), event.getTimeStamp(), event.getPackageName());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading usage events: " + e.getMessage());
+            buffer.clear();
+            return false;
+        }
+        ingests++;
+        totalEvents += buffer.size;
+        totalReadNanos += SystemClock.elapsedRealtimeNanos() - start;
+        return true;
+    }
+
+    // =====================================================
+    // Stats
+    // =====================================================
+
+    public synchronized long getIngestCount() {
+        return ingests;
+    }
+
+    public synchronized long getTotalEvents() {
+        return totalEvents;
+    }
+
+    public synchronized double getTotalReadMs() {
+        return totalReadNanos / 1e6;
+    }
+
+    public synchronized int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * Read throughput over every ingest so far, 0 before the first one.
+     */
+    public synchronized double getEventsPerSecond() {
+        return totalReadNanos > 0 ? totalEvents * 1e9 / totalReadNanos : 0;
+    }
+}
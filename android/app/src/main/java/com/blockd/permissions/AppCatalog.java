@@ -0,0 +1,344 @@
+package com.blockd.permissions;
+
+import android.content.BroadcastReceiver;
+import android.content.ChangedPackages;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.provider.Settings;
+import android.util.Log;
+
+import com.blockd.PackageClassifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Launchable apps with their labels, built from PackageManager once and persisted, then kept
+ * current from PACKAGE_* broadcasts. Answers label, launchability and "is this the system shell"
+ * questions from memory instead of a getApplicationInfo + getLaunchIntentForPackage probe per package.
+ *
+ * Changes made while we weren't running are picked up at load time with
+ * PackageManager.getChangedPackages; after a reboot (or before API 26) the catalog is rebuilt.
+ * Labels are localized, so the catalog is saved with its locale and rebuilt when that changes.
+ */
+public class AppCatalog {
+    private static final String TAG = "AppCatalog";
+    private static final String FILE_NAME = "app_catalog.bin";
+    private static final int MAGIC = 0x41505043; // "APPC"
+    private static final int FORMAT = 3;
+    private static final String SYSTEM_UI = "com.android.systemui";
+
+    public static final class App {
+        public final String packageName;
+        public final String label;
+
+        App(String packageName, String label) {
+            this.packageName = packageName;
+            this.label = label;
+        }
+    }
+
+    private static AppCatalog instance;
+
+    private final Context context;
+    private final File file;
+    private final Handler handler; // broadcasts and saves run here, off main
+    private final Map<String, App> apps = new LinkedHashMap<>();
+    private int sequenceNumber = 0;
+    private String locale = "";
+    private boolean loaded = false;
+    private volatile Set<String> shellPackages = null; // resolved on first use, dropped on package changes
+    private final CopyOnWriteArrayList<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+    private final Runnable saveRunnable = this::save;
+
+    private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            if (data == null) return;
+            String packageName = data.getSchemeSpecificPart();
+            boolean removed = Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+                && !intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+            synchronized (AppCatalog.this) {
+                if (!loaded) return; // the first load reads the current state anyway
+                if (removed) {
+                    apps.remove(packageName);
+                } else {
+                    refresh(packageName);
+                }
+                advanceSequenceNumber();
+            }
+            shellPackages = null; // a home app may have come or gone
+            scheduleSave();
+            notifyChanged();
+        }
+    };
+
+    private final BroadcastReceiver localeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            synchronized (AppCatalog.this) {
+                if (!loaded) return; // the first load checks the locale anyway
+                rebuild();
+                Log.d(TAG, "Rebuilt " + apps.size() + " apps for locale " + locale);
+            }
+            scheduleSave();
+            notifyChanged();
+        }
+    };
+
+    public static synchronized AppCatalog getInstance(Context context) {
+        if (instance == null) {
+            instance = new AppCatalog(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AppCatalog(Context context) {
+        this.context = context;
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        HandlerThread thread = new HandlerThread("AppCatalog");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        context.registerReceiver(packageReceiver, filter, null, handler);
+        context.registerReceiver(localeReceiver, new IntentFilter(Intent.ACTION_LOCALE_CHANGED), null, handler);
+    }
+
+    // =====================================================
+    // Queries
+    // =====================================================
+
+    /**
+     * The app if it has a launcher activity, otherwise null.
+     */
+    public synchronized App get(String packageName) {
+        ensureLoaded();
+        return apps.get(packageName);
+    }
+
+    public boolean isLaunchable(String packageName) {
+        return get(packageName) != null;
+    }
+
+    /**
+     * All launchable apps, in catalog order.
+     */
+    public synchronized List<App> getApps() {
+        ensureLoaded();
+        return new ArrayList<>(apps.values());
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return apps.size();
+    }
+
+    /**
+     * Run listener (on the catalog thread) after apps were added, removed or relabeled.
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.addIfAbsent(listener);
+    }
+
+    private void notifyChanged() {
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * True for home screens, SystemUI and Blockd itself - time there is not time spent in an app.
+     * Works for any package name, installed or not.
+     */
+    public boolean isShell(String packageName) {
+        Set<String> shell = shellPackages;
+        if (shell == null) shell = resolveShellPackages();
+        return shell.contains(packageName);
+    }
+
+    private synchronized Set<String> resolveShellPackages() {
+        if (shellPackages != null) return shellPackages;
+        Set<String> shell = new HashSet<>(PackageClassifier.resolveLauncherPackages(context.getPackageManager()));
+        shell.add(SYSTEM_UI);
+        shell.add(context.getPackageName());
+        shellPackages = shell;
+        return shell;
+    }
+
+    // =====================================================
+    // Building
+    // =====================================================
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        long start = System.currentTimeMillis();
+        if (load()) {
+            Log.d(TAG, "Loaded " + apps.size() + " apps in " + (System.currentTimeMillis() - start) + "ms");
+            return;
+        }
+        rebuild();
+        scheduleSave();
+        Log.d(TAG, "Built " + apps.size() + " apps in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void rebuild() {
+        PackageManager pm = context.getPackageManager();
+        apps.clear();
+        Intent intent = new Intent(Intent.ACTION_MAIN, null);
+        intent.addCategory(Intent.CATEGORY_LAUNCHER);
+        List<ResolveInfo> infos = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (ResolveInfo info : pm.queryIntentActivities(intent, 0)) {
+            // First launcher activity wins, like the old listing
+            if (seen.add(info.activityInfo.packageName)) infos.add(info);
+        }
+        // loadLabel is the slow part - spread it over the loader pool, order is kept
+        List<App> loaded = LoaderPool.getInstance().map("labels", infos, info -> toApp(pm, info));
+        for (App app : loaded) {
+            if (app != null) apps.put(app.packageName, app);
+        }
+        sequenceNumber = 0;
+        advanceSequenceNumber();
+        locale = currentLocale();
+    }
+
+    private void refresh(String packageName) {
+        PackageManager pm = context.getPackageManager();
+        Intent intent = new Intent(Intent.ACTION_MAIN, null);
+        intent.addCategory(Intent.CATEGORY_LAUNCHER);
+        intent.setPackage(packageName);
+        List<ResolveInfo> infos = pm.queryIntentActivities(intent, 0);
+        if (infos.isEmpty()) {
+            apps.remove(packageName);
+        } else {
+            apps.put(packageName, toApp(pm, infos.get(0)));
+        }
+    }
+
+    private static App toApp(PackageManager pm, ResolveInfo info) {
+        return new App(info.activityInfo.packageName, String.valueOf(info.loadLabel(pm)));
+    }
+
+    // =====================================================
+    // Persistence
+    // =====================================================
+
+    /**
+     * Read the saved catalog and apply what changed since. False if it has to be rebuilt.
+     */
+    private boolean load() {
+        if (!file.exists() || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) return false;
+            // Sequence numbers restart on boot
+            if (in.readInt() != bootCount()) return false;
+            // Labels in another language
+            locale = in.readUTF();
+            if (!locale.equals(currentLocale())) return false;
+            sequenceNumber = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String pkg = in.readUTF();
+                apps.put(pkg, new App(pkg, in.readUTF()));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading catalog: " + e.getMessage());
+            apps.clear();
+            return false;
+        }
+
+        ChangedPackages changed = context.getPackageManager().getChangedPackages(sequenceNumber);
+        if (changed != null) {
+            for (String pkg : changed.getPackageNames()) {
+                refresh(pkg);
+            }
+            sequenceNumber = changed.getSequenceNumber();
+            scheduleSave();
+        }
+        return true;
+    }
+
+    private void scheduleSave() {
+        handler.removeCallbacks(saveRunnable);
+        handler.post(saveRunnable);
+    }
+
+    private void save() {
+        List<App> snapshot;
+        int sequence;
+        String savedLocale;
+        synchronized (this) {
+            snapshot = new ArrayList<>(apps.values());
+            sequence = sequenceNumber;
+            savedLocale = locale;
+        }
+        File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(bootCount());
+            out.writeUTF(savedLocale);
+            out.writeInt(sequence);
+            out.writeInt(snapshot.size());
+            for (App app : snapshot) {
+                out.writeUTF(app.packageName);
+                out.writeUTF(app.label);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing catalog: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Could not replace catalog file");
+        }
+    }
+
+    /**
+     * Move the sequence number past changes we have already seen (the catalog is current).
+     */
+    private void advanceSequenceNumber() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+        ChangedPackages changed = context.getPackageManager().getChangedPackages(sequenceNumber);
+        if (changed != null) {
+            sequenceNumber = changed.getSequenceNumber();
+        }
+    }
+
+    private static String currentLocale() {
+        return Locale.getDefault().toLanguageTag();
+    }
+
+    private int bootCount() {
+        return Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+    }
+}
@@ -0,0 +1,214 @@
+package com.blockd.permissions;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * App icons rendered once and kept as 64x64 PNG files, handed to JS as file:// URIs that the
+ * image pipeline loads lazily - no icon bytes cross the bridge. An in-memory LRU of the URIs
+ * sits in front, so warm loads do no bitmap or PackageManager work.
+ *
+ * Each app has one file, re-rendered in place when it is older than the app's lastUpdateTime.
+ * The URI carries the file's modification time as a version, so the image pipeline, which
+ * caches by URI, loads the new icon instead of the bitmap it still holds for the old one.
+ * Package broadcasts drop the memory entries of apps that were updated, and the files of apps
+ * that were removed.
+ */
+public class IconCache {
+    private static final String TAG = "IconCache";
+    private static final String DIR_NAME = "icons";
+    private static final int ICON_SIZE = 64;
+    private static final int MEMORY_ENTRIES = 256;
+
+    // Each loader thread renders into its own bitmap, canvas and stream instead of allocating per icon
+    private static final class RenderBuffers {
+        final Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024);
+    }
+
+    private static final ThreadLocal<RenderBuffers> renderBuffers = new ThreadLocal<RenderBuffers>() {
+        @Override
+        protected RenderBuffers initialValue() {
+            return new RenderBuffers();
+        }
+    };
+
+    private static IconCache instance;
+
+    private final File dir;
+    private final LruCache<String, String> memory = new LruCache<>(MEMORY_ENTRIES); // package -> URI
+
+    private long hits = 0;
+    private long diskHits = 0;
+    private long renders = 0;
+
+    private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            if (data == null) return;
+            String packageName = data.getSchemeSpecificPart();
+            boolean removed = Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+                && !intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+            if (removed) {
+                invalidate(packageName);
+            } else {
+                memory.remove(packageName); // re-checked against lastUpdateTime on next use
+            }
+        }
+    };
+
+    public static synchronized IconCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new IconCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private IconCache(Context context) {
+        // Files dir rather than cache dir - a cache trim would mean rendering every icon again
+        this.dir = new File(context.getFilesDir(), DIR_NAME);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Could not create " + dir);
+        }
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        context.registerReceiver(packageReceiver, filter);
+    }
+
+    /**
+     * file:// URI of the app's icon, or "" if it can't be loaded.
+     */
+    public String getIconUri(PackageManager pm, String packageName) {
+        String cached = memory.get(packageName);
+        if (cached != null) {
+            synchronized (this) { hits++; }
+            return cached;
+        }
+
+        long lastUpdateTime;
+        try {
+            lastUpdateTime = pm.getPackageInfo(packageName, 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return "";
+        }
+
+        File file = new File(dir, packageName + ".png");
+        if (file.exists() && file.lastModified() >= lastUpdateTime) {
+            synchronized (this) { diskHits++; }
+        } else {
+            byte[] png = render(pm, packageName);
+            if (png == null || !writeFile(file, png)) return "";
+            synchronized (this) { renders++; }
+        }
+        String uri = Uri.fromFile(file).toString() + "?v=" + file.lastModified();
+        memory.put(packageName, uri);
+        return uri;
+    }
+
+    /**
+     * URIs for many apps at once, in the same order. Cache misses are rendered in parallel on
+     * the LoaderPool; hits are answered inline.
+     */
+    public List<String> getIconUris(PackageManager pm, List<String> packageNames) {
+        String[] uris = new String[packageNames.size()];
+        List<Integer> missIndexes = new ArrayList<>();
+        List<String> misses = new ArrayList<>();
+        for (int i = 0; i < uris.length; i++) {
+            String pkg = packageNames.get(i);
+            String cached = memory.get(pkg);
+            if (cached != null) {
+                synchronized (this) { hits++; }
+                uris[i] = cached;
+            } else {
+                missIndexes.add(i);
+                misses.add(pkg);
+            }
+        }
+        if (!misses.isEmpty()) {
+            List<String> loaded = LoaderPool.getInstance().map("icons", misses, pkg -> getIconUri(pm, pkg));
+            for (int j = 0; j < misses.size(); j++) {
+                String uri = loaded.get(j);
+                uris[missIndexes.get(j)] = uri != null ? uri : "";
+            }
+        }
+        return Arrays.asList(uris);
+    }
+
+    /**
+     * Forget the icon of an app that was removed.
+     */
+    public void invalidate(String packageName) {
+        memory.remove(packageName);
+        File file = new File(dir, packageName + ".png");
+        if (file.exists() && !file.delete()) {
+            Log.e(TAG, "Could not delete " + file);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getRenders() {
+        return renders;
+    }
+
+    private static byte[] render(PackageManager pm, String packageName) {
+        try {
+            Drawable icon = pm.getApplicationIcon(packageName);
+            RenderBuffers buffers = renderBuffers.get();
+            buffers.bitmap.eraseColor(Color.TRANSPARENT);
+            icon.setBounds(0, 0, ICON_SIZE, ICON_SIZE);
+            icon.draw(buffers.canvas);
+            buffers.out.reset();
+            buffers.bitmap.compress(Bitmap.CompressFormat.PNG, 100, buffers.out);
+            return buffers.out.toByteArray();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean writeFile(File file, byte[] png) {
+        // Written under a temp name so a crash never leaves a truncated icon behind
+        File tmp = new File(file.getParentFile(), file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(png);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing icon: " + e.getMessage());
+            return false;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Could not rename " + tmp + " to " + file);
+            return false;
+        }
+        return true;
+    }
+}
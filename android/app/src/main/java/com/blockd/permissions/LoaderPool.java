@@ -0,0 +1,138 @@
+package com.blockd.permissions;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small bounded pool, one worker per CPU, for the cold path of app metadata loading: icon
+ * rendering and label lookups on cache misses. A batch is split into contiguous slices, one per
+ * worker, and the results come back in input order no matter which worker finishes first.
+ */
+public class LoaderPool {
+    private static final String TAG = "LoaderPool";
+
+    // Below this a batch isn't worth handing to other threads
+    private static final int MIN_PARALLEL_BATCH = 4;
+
+    public interface Task<I, O> {
+        O run(I input) throws Exception;
+    }
+
+    private static LoaderPool instance;
+
+    private final int workers;
+    private final ExecutorService pool;
+    private final ThreadLocal<Boolean> isWorker = new ThreadLocal<>();
+
+    private long batches = 0;
+    private long items = 0;
+    private long totalBatchMs = 0;
+    private long lastBatchMs = 0;
+
+    public static synchronized LoaderPool getInstance() {
+        if (instance == null) {
+            instance = new LoaderPool(Runtime.getRuntime().availableProcessors());
+        }
+        return instance;
+    }
+
+    private LoaderPool(int cpus) {
+        this.workers = Math.max(1, cpus);
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                isWorker.set(Boolean.TRUE);
+                runnable.run();
+            }, "BlockdLoader-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run task over every input on the pool and return the results in input order.
+     * A failed item yields null. Small batches, and calls from a worker, run inline.
+     */
+    public <I, O> List<O> map(String batchName, List<I> inputs, Task<I, O> task) {
+        long start = SystemClock.elapsedRealtime();
+        int size = inputs.size();
+        Object[] results = new Object[size];
+        int slices = 1;
+
+        if (size < MIN_PARALLEL_BATCH || workers == 1 || Boolean.TRUE.equals(isWorker.get())) {
+            runSlice(inputs, task, results, 0, size);
+        } else {
+            slices = Math.min(workers, size);
+            List<Future<?>> futures = new ArrayList<>(slices);
+            for (int s = 0; s < slices; s++) {
+                int from = (int) ((long) size * s / slices);
+                int to = (int) ((long) size * (s + 1) / slices);
+                futures.add(pool.submit(() -> runSlice(inputs, task, results, from, to)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    Log.e(TAG, batchName + " slice failed: " + e.getMessage());
+                }
+            }
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        synchronized (this) {
+            batches++;
+            items += size;
+            totalBatchMs += elapsed;
+            lastBatchMs = elapsed;
+        }
+        Log.d(TAG, batchName + ": " + size + " items in " + elapsed + "ms on " + slices + " threads");
+
+        @SuppressWarnings("unchecked")
+        List<O> list = (List<O>) (List<?>) Arrays.asList(results);
+        return list;
+    }
+
+    private static <I, O> void runSlice(List<I> inputs, Task<I, O> task, Object[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            try {
+                results[i] = task.run(inputs.get(i));
+            } catch (Exception e) {
+                results[i] = null;
+            }
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers;
+    }
+
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+    public synchronized long getItemCount() {
+        return items;
+    }
+
+    public synchronized long getTotalBatchMs() {
+        return totalBatchMs;
+    }
+
+    public synchronized long getLastBatchMs() {
+        return lastBatchMs;
+    }
+}
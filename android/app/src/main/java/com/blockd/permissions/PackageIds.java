@@ -0,0 +1,34 @@
+package com.blockd.permissions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide package name interner. Usage aggregation indexes plain long[] by these ids
+ * instead of boxing a Long per package into a HashMap.
+ */
+public final class PackageIds {
+    private static final Map<String, Integer> ids = new HashMap<>();
+    private static final List<String> names = new ArrayList<>();
+
+    private PackageIds() {
+    }
+
+    public static synchronized int intern(String packageName) {
+        Integer id = ids.get(packageName);
+        if (id != null) return id;
+        ids.put(packageName, names.size());
+        names.add(packageName);
+        return names.size() - 1;
+    }
+
+    public static synchronized String name(int id) {
+        return names.get(id);
+    }
+
+    public static synchronized int count() {
+        return names.size();
+    }
+}
@@ -1,45 +1,62 @@
 package com.blockd.permissions;
 
 import android.app.AppOpsManager;
-import android.app.usage.UsageEvents;
 import android.app.usage.UsageStats;
 import android.app.usage.UsageStatsManager;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.PowerManager;
 import android.provider.Settings;
-import android.util.Base64;
+import android.util.Log;
 
+import com.blockd.UsageEventPipeline;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
 
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class PermissionsModule extends ReactContextBaseJavaModule {
+    private static final String TAG = "PermissionsModule";
     private final ReactApplicationContext reactContext;
+    private final IconCache iconCache;
+    private final AppCatalog appCatalog;
+    
+    // App list streams run here so cancel calls still get through on the modules thread
+    private final ExecutorService appListExecutor = Executors.newSingleThreadExecutor();
+    // Running streams -> cancelled; an id is only in here while its stream is queued or running
+    private final Map<Integer, Boolean> appStreams = new ConcurrentHashMap<>();
+    
+    // Usage queries: off the modules thread, identical requests merged, results kept briefly
+    private final QueryExecutor queryExecutor = new QueryExecutor();
+    private final UsageRollupStore rollups;
+    private UsageQueryPlanner usagePlanner; // created on first use, off the modules thread
 
     public PermissionsModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.iconCache = IconCache.getInstance(reactContext);
+        this.appCatalog = AppCatalog.getInstance(reactContext);
+        // Cached lists carry labels and icons of apps that may just have changed or gone
+        appCatalog.addChangeListener(queryExecutor::invalidate);
+        this.rollups = UsageRollupStore.getInstance(reactContext);
     }
 
     @Override
@@ -54,13 +71,7 @@ public class PermissionsModule extends ReactContextBaseJavaModule {
     @ReactMethod
     public void checkUsageStatsPermission(Promise promise) {
         try {
-            AppOpsManager appOps = (AppOpsManager) reactContext.getSystemService(Context.APP_OPS_SERVICE);
-            int mode = appOps.checkOpNoThrow(
-                AppOpsManager.OPSTR_GET_USAGE_STATS,
-                android.os.Process.myUid(),
-                reactContext.getPackageName()
-            );
-            promise.resolve(mode == AppOpsManager.MODE_ALLOWED);
+            promise.resolve(hasUsageStatsPermission());
         } catch (Exception e) {
             promise.reject("ERROR", e.getMessage());
         }
@@ -85,11 +96,7 @@ public class PermissionsModule extends ReactContextBaseJavaModule {
     @ReactMethod
     public void checkOverlayPermission(Promise promise) {
         try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                promise.resolve(Settings.canDrawOverlays(reactContext));
-            } else {
-                promise.resolve(true);
-            }
+            promise.resolve(hasOverlayPermission());
         } catch (Exception e) {
             promise.reject("ERROR", e.getMessage());
         }
@@ -119,12 +126,7 @@ public class PermissionsModule extends ReactContextBaseJavaModule {
     @ReactMethod
     public void checkBatteryOptimization(Promise promise) {
         try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                PowerManager pm = (PowerManager) reactContext.getSystemService(Context.POWER_SERVICE);
-                promise.resolve(pm.isIgnoringBatteryOptimizations(reactContext.getPackageName()));
-            } else {
-                promise.resolve(true);
-            }
+            promise.resolve(isIgnoringBatteryOptimizations());
         } catch (Exception e) {
             promise.reject("ERROR", e.getMessage());
         }
@@ -152,77 +154,154 @@ public class PermissionsModule extends ReactContextBaseJavaModule {
     @ReactMethod
     public void checkAllPermissions(Promise promise) {
         try {
-            WritableMap result = Arguments.createMap();
-            
-            AppOpsManager appOps = (AppOpsManager) reactContext.getSystemService(Context.APP_OPS_SERVICE);
-            int mode = appOps.checkOpNoThrow(
-                AppOpsManager.OPSTR_GET_USAGE_STATS,
-                android.os.Process.myUid(),
-                reactContext.getPackageName()
-            );
-            result.putBoolean("usageStats", mode == AppOpsManager.MODE_ALLOWED);
-            
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                result.putBoolean("overlay", Settings.canDrawOverlays(reactContext));
-            } else {
-                result.putBoolean("overlay", true);
-            }
-            
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                PowerManager pm = (PowerManager) reactContext.getSystemService(Context.POWER_SERVICE);
-                result.putBoolean("battery", pm.isIgnoringBatteryOptimizations(reactContext.getPackageName()));
-            } else {
-                result.putBoolean("battery", true);
-            }
-            
-            promise.resolve(result);
+            promise.resolve(permissionFlags());
         } catch (Exception e) {
             promise.reject("ERROR", e.getMessage());
         }
     }
 
+    private WritableMap permissionFlags() {
+        WritableMap result = Arguments.createMap();
+        result.putBoolean("usageStats", hasUsageStatsPermission());
+        result.putBoolean("overlay", hasOverlayPermission());
+        result.putBoolean("battery", isIgnoringBatteryOptimizations());
+        return result;
+    }
+
+    private boolean hasUsageStatsPermission() {
+        AppOpsManager appOps = (AppOpsManager) reactContext.getSystemService(Context.APP_OPS_SERVICE);
+        int mode = appOps.checkOpNoThrow(
+            AppOpsManager.OPSTR_GET_USAGE_STATS,
+            android.os.Process.myUid(),
+            reactContext.getPackageName()
+        );
+        return mode == AppOpsManager.MODE_ALLOWED;
+    }
+
+    private boolean hasOverlayPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return Settings.canDrawOverlays(reactContext);
+        }
+        return true;
+    }
+
+    private boolean isIgnoringBatteryOptimizations() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            PowerManager pm = (PowerManager) reactContext.getSystemService(Context.POWER_SERVICE);
+            return pm.isIgnoringBatteryOptimizations(reactContext.getPackageName());
+        }
+        return true;
+    }
+
+    // ============================================
+    // QUERY EXECUTOR
+    // ============================================
+
+    /**
+     * Reject the usage queries the caller holding token is still waiting for, e.g. when the
+     * dashboard unmounts. Other callers' queries are left alone.
+     */
+    @ReactMethod
+    public void cancelPendingQueries(String token) {
+        queryExecutor.cancel(token);
+    }
+
+    /**
+     * How long a usage query result is reused (0 turns the cache off).
+     */
+    @ReactMethod
+    public void setQueryCacheTtl(double ttlMs) {
+        queryExecutor.setTtlMs((long) ttlMs);
+    }
+
+    private static Object toArray(Object result) {
+        return Arguments.makeNativeArray((List<?>) result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toMap(Object result) {
+        return Arguments.makeNativeMap((Map<String, Object>) result);
+    }
+
     // ============================================
     // GET SCREEN UNLOCK COUNT TODAY
     // ============================================
 
     @ReactMethod
     public void getUnlockCountToday(Promise promise) {
+        queryExecutor.submit("unlockCount", this::computeUnlockCountToday, null, promise);
+    }
+
+    /**
+     * Today's screen turn-ons, counted incrementally like unlocks.
+     */
+    @ReactMethod
+    public void getPickupCountToday(Promise promise) {
+        queryExecutor.submit("pickupCount", this::computePickupCountToday, null, promise);
+    }
+
+    private Integer computeUnlockCountToday() {
         try {
-            UsageStatsManager usm = (UsageStatsManager) reactContext.getSystemService(Context.USAGE_STATS_SERVICE);
-            
-            // Start of today (00:00)
-            Calendar cal = Calendar.getInstance();
-            cal.set(Calendar.HOUR_OF_DAY, 0);
-            cal.set(Calendar.MINUTE, 0);
-            cal.set(Calendar.SECOND, 0);
-            cal.set(Calendar.MILLISECOND, 0);
-            long startOfDay = cal.getTimeInMillis();
-            long now = System.currentTimeMillis();
-            
-            UsageEvents events = usm.queryEvents(startOfDay, now);
-            int unlockCount = 0;
-            
-            UsageEvents.Event event = new UsageEvents.Event();
-            while (events.hasNextEvent()) {
-                events.getNextEvent(event);
-                // KEYGUARD_HIDDEN event type = 18
-                if (event.getEventType() == 18) {
-                    unlockCount++;
-                }
-            }
-            
-            promise.resolve(unlockCount);
+            // Only the events since the last read are looked at
+            return UnlockCounter.getInstance(reactContext).getUnlocks(System.currentTimeMillis());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private Integer computePickupCountToday() {
+        try {
+            return UnlockCounter.getInstance(reactContext).getPickups(System.currentTimeMillis());
         } catch (Exception e) {
-            promise.resolve(0);
+            return 0;
         }
     }
 
+    // ============================================
+    // HOURLY USAGE / EVENT INGESTION
+    // ============================================
+
+    /**
+     * Today's foreground minutes for each hour, from the shared event pipeline.
+     */
+    @ReactMethod
+    public void getHourlyUsage(Promise promise) {
+        queryExecutor.submit("hourlyUsage", this::computeHourlyUsage, PermissionsModule::toArray, promise);
+    }
+
+    private List<Integer> computeHourlyUsage() {
+        List<Integer> result = new ArrayList<>(TodayUsage.HOURS);
+        for (long ms : TodayUsage.getInstance(reactContext).getHourlyMs(System.currentTimeMillis(), this::countsForWeekly)) {
+            result.add((int) (ms / 1000 / 60)); // Minutes
+        }
+        return result;
+    }
+
+    /**
+     * How much the UsageEvents pipeline has read and how fast.
+     */
+    @ReactMethod
+    public void getIngestionStats(Promise promise) {
+        UsageEventPipeline pipeline = UsageEventPipeline.getInstance(reactContext);
+        WritableMap result = Arguments.createMap();
+        result.putDouble("ingests", pipeline.getIngestCount());
+        result.putDouble("events", pipeline.getTotalEvents());
+        result.putDouble("readMs", pipeline.getTotalReadMs());
+        result.putDouble("eventsPerSecond", pipeline.getEventsPerSecond());
+        result.putInt("lastBatchSize", pipeline.getLastBatchSize());
+        promise.resolve(result);
+    }
+
     // ============================================
     // GET TODAY'S APP USAGE (from 00:00)
     // ============================================
 
     @ReactMethod
     public void getTodayUsage(Promise promise) {
+        queryExecutor.submit("todayUsage", this::computeTodayUsage, PermissionsModule::toArray, promise);
+    }
+
+    private List<Map<String, Object>> computeTodayUsage() {
         try {
             UsageStatsManager usm = (UsageStatsManager) reactContext.getSystemService(Context.USAGE_STATS_SERVICE);
             PackageManager pm = reactContext.getPackageManager();
@@ -238,17 +317,16 @@ public class PermissionsModule extends ReactContextBaseJavaModule {
             
             List<UsageStats> stats = usm.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, startOfDay, now);
             
-            WritableArray result = Arguments.createArray();
-            
             if (stats == null || stats.isEmpty()) {
-                promise.resolve(result);
-                return;
+                return new ArrayList<>();
             }
             
             // Sort by usage time
             List<UsageStats> sortedStats = new ArrayList<>(stats);
             Collections.sort(sortedStats, (a, b) -> Long.compare(b.getTotalTimeInForeground(), a.getTotalTimeInForeground()));
             
+            List<AppCatalog.App> apps = new ArrayList<>();
+            List<Integer> appMinutes = new ArrayList<>();
             for (UsageStats stat : sortedStats) {
                 String pkg = stat.getPackageName();
                 long timeMs = stat.getTotalTimeInForeground();
@@ -256,31 +334,15 @@ public class PermissionsModule extends ReactContextBaseJavaModule {
                 
                 if (minutes < 1) continue;
                 
-                // Skip system apps
-                if (pkg.contains("launcher") || pkg.contains("systemui") || 
-                    pkg.startsWith("com.android.") || pkg.equals(reactContext.getPackageName())) {
-                    continue;
-                }
-                
-                try {
-                    ApplicationInfo appInfo = pm.getApplicationInfo(pkg, 0);
-                    if (pm.getLaunchIntentForPackage(pkg) == null) continue;
-                    
-                    String appName = (String) pm.getApplicationLabel(appInfo);
-                    String iconBase64 = getIconBase64(pm, pkg);
-                    
-                    WritableMap app = Arguments.createMap();
-                    app.putString("packageName", pkg);
-                    app.putString("appName", appName);
-                    app.putInt("usageMinutes", minutes);
-                    app.putString("icon", iconBase64);
-                    result.pushMap(app);
-                } catch (Exception ignored) {}
+                AppCatalog.App app = appCatalog.get(pkg);
+                if (!isUserApp(app)) continue; // not launchable, or part of the shell
+                apps.add(app);
+                appMinutes.add(minutes);
             }
             
-            promise.resolve(result);
+            return appList(pm, apps, appMinutes);
         } catch (Exception e) {
-            promise.resolve(Arguments.createArray());
+            return new ArrayList<>();
         }
     }
 
@@ -290,48 +352,47 @@ public class PermissionsModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void getWeeklyUsage(Promise promise) {
+        queryExecutor.submit("weeklyUsage", this::computeWeeklyUsage, PermissionsModule::toArray, promise);
+    }
+
+    /**
+     * Apps that show up in lists: launchable now, and not a home screen, SystemUI or Blockd.
+     */
+    private boolean isUserApp(AppCatalog.App app) {
+        return app != null && !appCatalog.isShell(app.packageName);
+    }
+
+    /**
+     * Totals count every app but the shell, whether or not it is still installed today.
+     */
+    private boolean countsForWeekly(String pkg) {
+        return !appCatalog.isShell(pkg);
+    }
+
+    private List<Integer> computeWeeklyUsage() {
         try {
-            UsageStatsManager usm = (UsageStatsManager) reactContext.getSystemService(Context.USAGE_STATS_SERVICE);
-            WritableArray result = Arguments.createArray();
-            
-            // Go back 7 days
-            for (int i = 6; i >= 0; i--) {
-                Calendar cal = Calendar.getInstance();
-                cal.add(Calendar.DAY_OF_YEAR, -i);
-                cal.set(Calendar.HOUR_OF_DAY, 0);
-                cal.set(Calendar.MINUTE, 0);
-                cal.set(Calendar.SECOND, 0);
-                cal.set(Calendar.MILLISECOND, 0);
-                long dayStart = cal.getTimeInMillis();
-                
-                cal.add(Calendar.DAY_OF_YEAR, 1);
-                long dayEnd = cal.getTimeInMillis();
-                
-                if (i == 0) {
-                    dayEnd = System.currentTimeMillis();
-                }
-                
-                List<UsageStats> stats = usm.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, dayStart, dayEnd);
-                
-                long totalMs = 0;
-                if (stats != null) {
-                    for (UsageStats stat : stats) {
-                        String pkg = stat.getPackageName();
-                        if (!pkg.contains("launcher") && !pkg.contains("systemui") && !pkg.startsWith("com.android.")) {
-                            totalMs += stat.getTotalTimeInForeground();
-                        }
-                    }
-                }
-                
-                result.pushInt((int) (totalMs / 1000 / 60)); // Minutes
-            }
-            
-            promise.resolve(result);
+            long now = System.currentTimeMillis();
+            return weeklyMinutes(now, rollups.todayTotal(now, this::countsForWeekly));
         } catch (Exception e) {
-            WritableArray fallback = Arguments.createArray();
-            for (int i = 0; i < 7; i++) fallback.pushInt(0);
-            promise.resolve(fallback);
+            List<Integer> fallback = new ArrayList<>();
+            for (int i = 0; i < 7; i++) fallback.add(0);
+            return fallback;
+        }
+    }
+
+    /**
+     * Minutes per day, oldest first: the past six days from sealed rollup rows, then todayMs.
+     */
+    private List<Integer> weeklyMinutes(long now, long todayMs) {
+        List<Integer> result = new ArrayList<>();
+        int today = UsageRollupStore.localDay(now);
+        rollups.sealFinishedDays(now);
+        for (int i = 6; i >= 1; i--) {
+            long totalMs = rollups.dayTotal(today - i, this::countsForWeekly);
+            result.add((int) (totalMs / 1000 / 60)); // Minutes
         }
+        result.add((int) (todayMs / 1000 / 60));
+        return result;
     }
 
     // ============================================
@@ -344,36 +405,262 @@ public class PermissionsModule extends ReactContextBaseJavaModule {
             PackageManager pm = reactContext.getPackageManager();
             WritableArray result = Arguments.createArray();
             
-            Intent intent = new Intent(Intent.ACTION_MAIN, null);
-            intent.addCategory(Intent.CATEGORY_LAUNCHER);
-            List<ResolveInfo> apps = pm.queryIntentActivities(intent, 0);
-            
-            for (ResolveInfo info : apps) {
-                String pkg = info.activityInfo.packageName;
-                
-                // Skip system apps
-                if (pkg.contains("launcher") || pkg.contains("systemui") || 
-                    pkg.startsWith("com.android.") || pkg.equals(reactContext.getPackageName())) {
-                    continue;
+            pushApps(result, pm, listedApps(), null);
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.resolve(Arguments.createArray());
+        }
+    }
+
+    /**
+     * Current icon URIs for the given apps, "" for apps that are not installed. Saved limits
+     * keep only the package name and look their icon up here when they are drawn.
+     */
+    @ReactMethod
+    public void getAppIcons(ReadableArray packageNames, Promise promise) {
+        List<String> packages = new ArrayList<>(packageNames.size());
+        for (int i = 0; i < packageNames.size(); i++) {
+            packages.add(packageNames.getString(i));
+        }
+        appListExecutor.execute(() -> {
+            try {
+                List<String> uris = iconCache.getIconUris(reactContext.getPackageManager(), packages);
+                WritableMap result = Arguments.createMap();
+                for (int i = 0; i < packages.size(); i++) {
+                    result.putString(packages.get(i), uris.get(i));
                 }
-                
-                try {
-                    String appName = (String) info.loadLabel(pm);
-                    String iconBase64 = getIconBase64(pm, pkg);
-                    
-                    WritableMap app = Arguments.createMap();
-                    app.putString("packageName", pkg);
-                    app.putString("appName", appName);
-                    app.putInt("usageMinutes", 0);
-                    app.putString("icon", iconBase64);
-                    result.pushMap(app);
-                } catch (Exception ignored) {}
+                promise.resolve(result);
+            } catch (Exception e) {
+                promise.reject("ERROR", e.getMessage());
+            }
+        });
+    }
+
+    // ============================================
+    // INSTALLED APPS - PAGED / STREAMED
+    // ============================================
+
+    /**
+     * One page of the app list, icons included. nextCursor is -1 after the last page.
+     */
+    @ReactMethod
+    public void getInstalledAppsPage(int cursor, int pageSize, Promise promise) {
+        try {
+            PackageManager pm = reactContext.getPackageManager();
+            List<AppCatalog.App> apps = listedApps();
+            int end = Math.min(apps.size(), cursor + Math.max(1, pageSize));
+            
+            WritableArray page = Arguments.createArray();
+            if (cursor < end) {
+                pushApps(page, pm, apps.subList(cursor, end), null);
             }
             
+            WritableMap result = Arguments.createMap();
+            result.putArray("apps", page);
+            result.putInt("nextCursor", end < apps.size() ? end : -1);
+            result.putInt("total", apps.size());
             promise.resolve(result);
         } catch (Exception e) {
-            promise.resolve(Arguments.createArray());
+            promise.reject("ERROR", e.getMessage());
+        }
+    }
+
+    /**
+     * Stream the app list to JS in pages of pageSize: first every page with labels only
+     * (onInstalledAppsChunk), then the icons page by page (onInstalledAppIcons). The picker
+     * can draw the first screenful before a single icon has been rendered.
+     */
+    @ReactMethod
+    public void streamInstalledApps(int streamId, int pageSize) {
+        appStreams.put(streamId, false);
+        appListExecutor.execute(() -> runAppStream(streamId, Math.max(1, pageSize)));
+    }
+
+    /**
+     * Stop a stream after the page it is working on. Ignored once the stream has ended.
+     */
+    @ReactMethod
+    public void cancelInstalledAppsStream(int streamId) {
+        appStreams.replace(streamId, true);
+    }
+
+    private boolean isStreamCancelled(int streamId) {
+        return Boolean.TRUE.equals(appStreams.get(streamId));
+    }
+
+    private void runAppStream(int streamId, int pageSize) {
+        try {
+            PackageManager pm = reactContext.getPackageManager();
+            List<AppCatalog.App> apps = listedApps();
+            int total = apps.size();
+            
+            // Labels first - all from the catalog in memory
+            for (int cursor = 0; cursor < total || cursor == 0; cursor += pageSize) {
+                if (isStreamCancelled(streamId)) return;
+                int end = Math.min(total, cursor + pageSize);
+                WritableArray page = Arguments.createArray();
+                for (int i = cursor; i < end; i++) {
+                    page.pushMap(appToMap(apps.get(i), 0, ""));
+                }
+                WritableMap chunk = Arguments.createMap();
+                chunk.putInt("streamId", streamId);
+                chunk.putInt("cursor", cursor);
+                chunk.putInt("nextCursor", end < total ? end : -1);
+                chunk.putInt("total", total);
+                chunk.putArray("apps", page);
+                sendEvent("onInstalledAppsChunk", chunk);
+                if (end >= total) break;
+            }
+            
+            // Then icons, in the same order - an empty list still gets its done chunk
+            if (total == 0) {
+                WritableMap chunk = Arguments.createMap();
+                chunk.putInt("streamId", streamId);
+                chunk.putInt("cursor", 0);
+                chunk.putBoolean("done", true);
+                chunk.putMap("icons", Arguments.createMap());
+                sendEvent("onInstalledAppIcons", chunk);
+            }
+            for (int cursor = 0; cursor < total; cursor += pageSize) {
+                if (isStreamCancelled(streamId)) return;
+                int end = Math.min(total, cursor + pageSize);
+                List<String> pkgs = packageNames(apps.subList(cursor, end));
+                List<String> uris = iconCache.getIconUris(pm, pkgs);
+                WritableMap icons = Arguments.createMap();
+                for (int i = 0; i < pkgs.size(); i++) {
+                    icons.putString(pkgs.get(i), uris.get(i));
+                }
+                WritableMap chunk = Arguments.createMap();
+                chunk.putInt("streamId", streamId);
+                chunk.putInt("cursor", cursor);
+                chunk.putBoolean("done", end >= total);
+                chunk.putMap("icons", icons);
+                sendEvent("onInstalledAppIcons", chunk);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "App stream " + streamId + " failed: " + e.getMessage());
+        } finally {
+            appStreams.remove(streamId);
+        }
+    }
+
+    /**
+     * Launchable user-facing apps, sorted by label so pages are stable.
+     */
+    private List<AppCatalog.App> listedApps() {
+        List<AppCatalog.App> apps = new ArrayList<>();
+        for (AppCatalog.App entry : appCatalog.getApps()) {
+            if (isUserApp(entry)) apps.add(entry);
         }
+        Collections.sort(apps, (a, b) -> a.label.compareToIgnoreCase(b.label));
+        return apps;
+    }
+
+    private static WritableMap appToMap(AppCatalog.App entry, int usageMinutes, String iconUri) {
+        WritableMap app = Arguments.createMap();
+        app.putString("packageName", entry.packageName);
+        app.putString("appName", entry.label);
+        app.putInt("usageMinutes", usageMinutes);
+        app.putString("icon", iconUri);
+        return app;
+    }
+
+    /**
+     * Cold-path loading numbers: loader pool batches, icon cache hit rates and usage query reuse.
+     */
+    @ReactMethod
+    public void getLoaderStats(Promise promise) {
+        LoaderPool pool = LoaderPool.getInstance();
+        WritableMap result = Arguments.createMap();
+        result.putInt("workers", pool.getWorkerCount());
+        result.putDouble("batches", pool.getBatchCount());
+        result.putDouble("items", pool.getItemCount());
+        result.putDouble("totalBatchMs", pool.getTotalBatchMs());
+        result.putDouble("lastBatchMs", pool.getLastBatchMs());
+        result.putDouble("iconMemoryHits", iconCache.getHits());
+        result.putDouble("iconDiskHits", iconCache.getDiskHits());
+        result.putDouble("iconRenders", iconCache.getRenders());
+        result.putDouble("queriesComputed", queryExecutor.getComputedCount());
+        result.putDouble("queriesMerged", queryExecutor.getMergedCount());
+        result.putDouble("queryCacheHits", queryExecutor.getCacheHitCount());
+        result.putDouble("queriesCancelled", queryExecutor.getCancelledCount());
+        promise.resolve(result);
+    }
+
+    private void sendEvent(String eventName, WritableMap params) {
+        try {
+            reactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(eventName, params);
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending event: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void addListener(String eventName) {
+        // Required for RN event emitter
+    }
+
+    @ReactMethod
+    public void removeListeners(int count) {
+        // Required for RN event emitter
+    }
+
+    // ============================================
+    // DASHBOARD SNAPSHOT
+    // ============================================
+
+    /**
+     * Today's apps, unlocks, pickups and the 7-day series in one result, instead of
+     * getTodayUsage + getUnlockCountToday + getWeeklyUsage. Today comes from the counters the
+     * event pipeline keeps current, past days from the rollup store - no UsageStats walk.
+     * token identifies the caller for cancelPendingQueries.
+     */
+    @ReactMethod
+    public void getDashboardSnapshot(String token, Promise promise) {
+        queryExecutor.submit("dashboard", token, this::computeDashboardSnapshot, PermissionsModule::toMap, promise);
+    }
+
+    private Map<String, Object> computeDashboardSnapshot() {
+        long now = System.currentTimeMillis();
+        PackageManager pm = reactContext.getPackageManager();
+        UsageTotals today = new UsageTotals();
+        TodayUsage.getInstance(reactContext).addAppTotals(today, now);
+        
+        // Most used first
+        List<Integer> order = new ArrayList<>();
+        long todayMs = 0;
+        for (int id = 0; id < today.size(); id++) {
+            if (today.get(id) <= 0) continue;
+            order.add(id);
+            if (countsForWeekly(PackageIds.name(id))) todayMs += today.get(id);
+        }
+        Collections.sort(order, (a, b) -> Long.compare(today.get(b), today.get(a)));
+        
+        List<AppCatalog.App> apps = new ArrayList<>();
+        List<Integer> appMinutes = new ArrayList<>();
+        int totalMinutes = 0;
+        for (int id : order) {
+            int minutes = (int) (today.get(id) / 1000 / 60);
+            
+            if (minutes < 1) break;
+            
+            AppCatalog.App app = appCatalog.get(PackageIds.name(id));
+            if (!isUserApp(app)) continue; // not launchable, or part of the shell
+            apps.add(app);
+            appMinutes.add(minutes);
+            totalMinutes += minutes;
+        }
+        
+        UnlockCounter unlockCounter = UnlockCounter.getInstance(reactContext);
+        Map<String, Object> result = new HashMap<>();
+        result.put("apps", appList(pm, apps, appMinutes));
+        result.put("totalMinutes", totalMinutes);
+        result.put("unlocks", unlockCounter.getUnlocks(now));
+        result.put("pickups", unlockCounter.getPickups(now));
+        result.put("weekly", weeklyMinutes(now, todayMs));
+        return result;
     }
 
     // ============================================
@@ -386,85 +673,89 @@ public class PermissionsModule extends ReactContextBaseJavaModule {
             getTodayUsage(promise);
             return;
         }
-        
+        queryExecutor.submit("appUsage:" + days, () -> computeAppUsageStats(days), PermissionsModule::toArray, promise);
+    }
+
+    private synchronized UsageQueryPlanner usagePlanner(UsageStatsManager usm) {
+        if (usagePlanner == null) {
+            usagePlanner = new UsageQueryPlanner(usm, rollups, TodayUsage.getInstance(reactContext));
+        }
+        return usagePlanner;
+    }
+
+    private List<Map<String, Object>> computeAppUsageStats(int days) {
         try {
             UsageStatsManager usm = (UsageStatsManager) reactContext.getSystemService(Context.USAGE_STATS_SERVICE);
             PackageManager pm = reactContext.getPackageManager();
-            WritableArray result = Arguments.createArray();
-            
-            long endTime = System.currentTimeMillis();
-            long startTime = endTime - ((long) days * 24 * 60 * 60 * 1000L);
-            
-            List<UsageStats> stats = usm.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, startTime, endTime);
             
-            if (stats == null || stats.isEmpty()) {
-                promise.resolve(result);
-                return;
-            }
-            
-            // Aggregate by package
-            Map<String, Long> usageMap = new HashMap<>();
-            for (UsageStats stat : stats) {
-                String pkg = stat.getPackageName();
-                long time = stat.getTotalTimeInForeground();
-                Long existing = usageMap.get(pkg);
-                usageMap.put(pkg, (existing != null ? existing : 0L) + time);
-            }
+            // Rollup rows, coarse system buckets for older days, today from events
+            UsageTotals totals = usagePlanner(usm).query(days, System.currentTimeMillis());
             
             // Sort and return
-            List<Map.Entry<String, Long>> sortedList = new ArrayList<>(usageMap.entrySet());
-            Collections.sort(sortedList, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+            List<Integer> ids = new ArrayList<>();
+            for (int id = 0; id < totals.size(); id++) {
+                if (totals.get(id) > 0) ids.add(id);
+            }
+            Collections.sort(ids, (a, b) -> Long.compare(totals.get(b), totals.get(a)));
             
-            for (Map.Entry<String, Long> entry : sortedList) {
-                String pkg = entry.getKey();
-                long totalMs = entry.getValue();
+            List<AppCatalog.App> apps = new ArrayList<>();
+            List<Integer> appMinutes = new ArrayList<>();
+            for (int id : ids) {
+                String pkg = PackageIds.name(id);
+                long totalMs = totals.get(id);
                 int avgMinutes = (int) ((totalMs / 1000 / 60) / Math.max(1, days));
                 
-                if (avgMinutes < 1) continue;
-                
-                if (pkg.contains("launcher") || pkg.contains("systemui") || 
-                    pkg.startsWith("com.android.") || pkg.equals(reactContext.getPackageName())) {
-                    continue;
-                }
+                if (avgMinutes < 1) break;
                 
-                try {
-                    ApplicationInfo appInfo = pm.getApplicationInfo(pkg, 0);
-                    if (pm.getLaunchIntentForPackage(pkg) == null) continue;
-                    
-                    String appName = (String) pm.getApplicationLabel(appInfo);
-                    String iconBase64 = getIconBase64(pm, pkg);
-                    
-                    WritableMap app = Arguments.createMap();
-                    app.putString("packageName", pkg);
-                    app.putString("appName", appName);
-                    app.putInt("usageMinutes", avgMinutes);
-                    app.putString("icon", iconBase64);
-                    result.pushMap(app);
-                } catch (Exception ignored) {}
+                AppCatalog.App app = appCatalog.get(pkg);
+                if (!isUserApp(app)) continue; // not launchable, or part of the shell
+                apps.add(app);
+                appMinutes.add(avgMinutes);
             }
             
-            promise.resolve(result);
+            return appList(pm, apps, appMinutes);
         } catch (Exception e) {
-            promise.resolve(Arguments.createArray());
+            return new ArrayList<>();
         }
     }
 
     // ============================================
-    // HELPER: Get Icon as Base64
+    // HELPER: App entries with icon file:// URIs
     // ============================================
 
-    private String getIconBase64(PackageManager pm, String packageName) {
-        try {
-            Drawable icon = pm.getApplicationIcon(packageName);
-            Bitmap bitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-            icon.setBounds(0, 0, 64, 64);
-            icon.draw(canvas);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-            return Base64.encodeToString(baos.toByteArray(), Base64.NO_WRAP);
-        } catch (Exception e) {
-            return "";
+    /**
+     * Push apps (with minutes, or 0 if null) in order. Icons missing from the cache are
+     * rendered in one parallel batch; JS loads the files itself, no icon bytes cross the bridge.
+     */
+    private void pushApps(WritableArray result, PackageManager pm, List<AppCatalog.App> apps, List<Integer> minutes) {
+        List<String> uris = iconCache.getIconUris(pm, packageNames(apps));
+        for (int i = 0; i < apps.size(); i++) {
+            result.pushMap(appToMap(apps.get(i), minutes != null ? minutes.get(i) : 0, uris.get(i)));
+        }
+    }
+
+    /**
+     * Same entries as pushApps, as plain Java values a QueryExecutor result can hold.
+     */
+    private List<Map<String, Object>> appList(PackageManager pm, List<AppCatalog.App> apps, List<Integer> minutes) {
+        List<String> uris = iconCache.getIconUris(pm, packageNames(apps));
+        List<Map<String, Object>> result = new ArrayList<>(apps.size());
+        for (int i = 0; i < apps.size(); i++) {
+            Map<String, Object> app = new HashMap<>();
+            app.put("packageName", apps.get(i).packageName);
+            app.put("appName", apps.get(i).label);
+            app.put("usageMinutes", minutes.get(i));
+            app.put("icon", uris.get(i));
+            result.add(app);
+        }
+        return result;
+    }
+
+    private static List<String> packageNames(List<AppCatalog.App> apps) {
+        List<String> names = new ArrayList<>(apps.size());
+        for (AppCatalog.App app : apps) {
+            names.add(app.packageName);
         }
+        return names;
     }
 }
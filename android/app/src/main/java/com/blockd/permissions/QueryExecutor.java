@@ -0,0 +1,216 @@
+package com.blockd.permissions;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.Promise;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs PermissionsModule's UsageStats queries off the native-modules thread. Identical requests
+ * that arrive while one is computing share its result. Results are kept for a short TTL, so a
+ * screen that re-queries on focus doesn't repeat the work.
+ *
+ * A request can carry a caller token; cancelling that token only drops that caller's requests,
+ * so one screen going away never rejects another screen's queries.
+ *
+ * Results are plain Java values (List / Map / Number / String); the caller turns them into
+ * bridge types per promise, because a WritableArray can only be handed to JS once.
+ */
+public class QueryExecutor {
+    private static final String TAG = "QueryExecutor";
+    private static final int THREADS = 2;
+    public static final long DEFAULT_TTL_MS = 5000;
+
+    public interface Query {
+        Object run() throws Exception;
+    }
+
+    /**
+     * Turns a cached Java result into what a promise is resolved with.
+     */
+    public interface Converter {
+        Object convert(Object result);
+    }
+
+    private static final class Waiter {
+        final Promise promise;
+        final Converter converter;
+        final String token; // null if the caller never cancels
+
+        Waiter(Promise promise, Converter converter, String token) {
+            this.promise = promise;
+            this.converter = converter;
+            this.token = token;
+        }
+    }
+
+    private static final class InFlight {
+        final List<Waiter> waiters = new ArrayList<>();
+        Future<?> future;
+    }
+
+    private static final class Cached {
+        final Object value;
+        final long at;
+
+        Cached(Object value, long at) {
+            this.value = value;
+            this.at = at;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final Map<String, InFlight> inFlight = new HashMap<>();
+    private final Map<String, Cached> cache = new HashMap<>();
+    private long ttlMs = DEFAULT_TTL_MS;
+
+    private long computed = 0;
+    private long merged = 0;
+    private long cacheHits = 0;
+    private long cancelled = 0;
+
+    public QueryExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "BlockdQuery-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Resolve promise with the result of query for key: from the cache if it is fresh, from
+     * the identical request already running, or by running it now.
+     */
+    public void submit(String key, Query query, Converter converter, Promise promise) {
+        submit(key, null, query, converter, promise);
+    }
+
+    /**
+     * Same as submit, on behalf of the caller holding token (see cancel).
+     */
+    public void submit(String key, String token, Query query, Converter converter, Promise promise) {
+        Waiter waiter = new Waiter(promise, converter, token);
+        synchronized (this) {
+            Cached cached = cache.get(key);
+            if (cached != null && SystemClock.elapsedRealtime() - cached.at < ttlMs) {
+                cacheHits++;
+                resolve(waiter, cached.value);
+                return;
+            }
+            InFlight running = inFlight.get(key);
+            if (running != null) {
+                merged++;
+                running.waiters.add(waiter);
+                return;
+            }
+            InFlight started = new InFlight();
+            started.waiters.add(waiter);
+            inFlight.put(key, started);
+            started.future = executor.submit(() -> run(key, query));
+        }
+    }
+
+    private void run(String key, Query query) {
+        Object value = null;
+        Exception error = null;
+        long start = SystemClock.elapsedRealtime();
+        try {
+            value = query.run();
+        } catch (Exception e) {
+            error = e;
+        }
+
+        List<Waiter> waiters;
+        synchronized (this) {
+            InFlight done = inFlight.remove(key);
+            waiters = done != null ? done.waiters : new ArrayList<>();
+            computed++;
+            if (error == null) {
+                cache.put(key, new Cached(value, SystemClock.elapsedRealtime()));
+            }
+        }
+        Log.d(TAG, key + " computed in " + (SystemClock.elapsedRealtime() - start) + "ms for " + waiters.size() + " callers");
+
+        for (Waiter waiter : waiters) {
+            if (error != null) {
+                waiter.promise.reject("ERROR", error.getMessage());
+            } else {
+                resolve(waiter, value);
+            }
+        }
+    }
+
+    private static void resolve(Waiter waiter, Object value) {
+        waiter.promise.resolve(waiter.converter != null ? waiter.converter.convert(value) : value);
+    }
+
+    /**
+     * Reject the requests submitted with token that are still waiting (e.g. their screen went
+     * away). A query nobody else is waiting for is stopped if it hasn't started yet.
+     */
+    public void cancel(String token) {
+        if (token == null) return;
+        List<Waiter> dropped = new ArrayList<>();
+        synchronized (this) {
+            for (InFlight running : inFlight.values()) {
+                for (Iterator<Waiter> it = running.waiters.iterator(); it.hasNext(); ) {
+                    Waiter waiter = it.next();
+                    if (token.equals(waiter.token)) {
+                        dropped.add(waiter);
+                        it.remove();
+                    }
+                }
+                // A query that already started finishes and still fills the cache
+                if (running.waiters.isEmpty() && running.future != null && running.future.cancel(false)) {
+                    cancelled++;
+                }
+            }
+            inFlight.values().removeIf(running -> running.future != null && running.future.isCancelled());
+        }
+        for (Waiter waiter : dropped) {
+            waiter.promise.reject("CANCELLED", "Query cancelled");
+        }
+    }
+
+    public synchronized void setTtlMs(long ttlMs) {
+        this.ttlMs = Math.max(0, ttlMs);
+    }
+
+    /**
+     * Drop cached results, e.g. when they would be stale for reasons the TTL can't see.
+     */
+    public synchronized void invalidate() {
+        cache.clear();
+    }
+
+    public synchronized long getComputedCount() {
+        return computed;
+    }
+
+    public synchronized long getMergedCount() {
+        return merged;
+    }
+
+    public synchronized long getCacheHitCount() {
+        return cacheHits;
+    }
+
+    public synchronized long getCancelledCount() {
+        return cancelled;
+    }
+}
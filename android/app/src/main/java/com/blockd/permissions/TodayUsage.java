@@ -0,0 +1,166 @@
+package com.blockd.permissions;
+
+import android.content.Context;
+
+import com.blockd.UsageEventPipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Today's foreground time per hour of the day and per app, built from the shared
+ * UsageEventPipeline like the other event metrics - it adds no queries of its own. Sessions are
+ * rebuilt from the foreground/background events and split at hour boundaries.
+ *
+ * Every app is recorded as it comes; which apps count is up to the caller at query time, so
+ * ingest never waits on the app catalog.
+ */
+public class TodayUsage implements UsageEventPipeline.Consumer {
+    public static final int HOURS = 24;
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+
+    // UsageEvents.Event types
+    private static final int MOVE_TO_FOREGROUND = 1;
+    private static final int MOVE_TO_BACKGROUND = 2;
+    private static final int SCREEN_NON_INTERACTIVE = 16;
+
+    private static TodayUsage instance;
+
+    private final UsageEventPipeline pipeline;
+    private long[][] appHourMs = new long[64][]; // by PackageIds id, then hour - null until used
+
+    private long dayStart;
+    private long nextDayStart;
+    private String activePackage = null;
+    private int activeId = -1;
+    private long sessionStart = 0;
+
+    public static synchronized TodayUsage getInstance(Context context) {
+        if (instance == null) {
+            instance = new TodayUsage(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private TodayUsage(Context context) {
+        this.pipeline = UsageEventPipeline.getInstance(context);
+        setDay(System.currentTimeMillis());
+        pipeline.addConsumer(this, dayStart);
+    }
+
+    /**
+     * Foreground ms for each hour of today, the open session included, summed over the apps
+     * filter lets through.
+     */
+    public long[] getHourlyMs(long now, UsageRollupStore.PackageFilter filter) {
+        pipeline.ingest(now);
+        List<String> packages = new ArrayList<>();
+        List<long[]> hours = new ArrayList<>();
+        synchronized (this) {
+            rollDayIfNeeded(now);
+            for (int id = 0; id < appHourMs.length; id++) {
+                if (appHourMs[id] == null) continue;
+                packages.add(PackageIds.name(id));
+                hours.add(Arrays.copyOf(appHourMs[id], HOURS));
+            }
+            if (activePackage != null && now > sessionStart) {
+                long[] open = new long[HOURS];
+                credit(open, sessionStart, now);
+                packages.add(activePackage);
+                hours.add(open);
+            }
+        }
+        // Filter outside the lock - it may have to load the catalog
+        long[] result = new long[HOURS];
+        for (int i = 0; i < packages.size(); i++) {
+            if (!filter.include(packages.get(i))) continue;
+            long[] app = hours.get(i);
+            for (int hour = 0; hour < HOURS; hour++) result[hour] += app[hour];
+        }
+        return result;
+    }
+
+    /**
+     * Add each app's foreground ms today, the open session included, to totals. Every app is
+     * added; the caller drops the ones it doesn't count.
+     */
+    public void addAppTotals(UsageTotals totals, long now) {
+        pipeline.ingest(now);
+        synchronized (this) {
+            rollDayIfNeeded(now);
+            for (int id = 0; id < appHourMs.length; id++) {
+                if (appHourMs[id] == null) continue;
+                long ms = 0;
+                for (long hour : appHourMs[id]) ms += hour;
+                if (ms > 0) totals.add(id, ms);
+            }
+            if (activePackage != null && now > sessionStart) {
+                totals.add(activeId, now - Math.max(sessionStart, dayStart));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onEvents(UsageEventPipeline.EventBuffer events) {
+        for (int i = 0; i < events.size(); i++) {
+            long timestamp = events.timestamp(i);
+            if (timestamp < dayStart) continue; // before today - nothing to record
+            rollDayIfNeeded(timestamp);
+            int type = events.type(i);
+            if (type == MOVE_TO_FOREGROUND) {
+                closeSession(timestamp);
+                activePackage = events.packageName(i);
+                activeId = PackageIds.intern(activePackage);
+                sessionStart = timestamp;
+            } else if (type == MOVE_TO_BACKGROUND) {
+                if (events.packageName(i).equals(activePackage)) closeSession(timestamp);
+            } else if (type == SCREEN_NON_INTERACTIVE) {
+                closeSession(timestamp);
+            }
+        }
+    }
+
+    private void closeSession(long end) {
+        if (activePackage != null) {
+            if (activeId >= appHourMs.length) {
+                appHourMs = Arrays.copyOf(appHourMs, Math.max(activeId + 1, appHourMs.length * 2));
+            }
+            if (appHourMs[activeId] == null) appHourMs[activeId] = new long[HOURS];
+            credit(appHourMs[activeId], sessionStart, end);
+        }
+        activePackage = null;
+    }
+
+    private void credit(long[] hours, long start, long end) {
+        start = Math.max(start, dayStart);
+        while (start < end) {
+            int hour = (int) ((start - dayStart) / HOUR_MS);
+            if (hour >= HOURS) break;
+            long hourEnd = Math.min(end, dayStart + (hour + 1) * HOUR_MS);
+            hours[hour] += hourEnd - start;
+            start = hourEnd;
+        }
+    }
+
+    private void rollDayIfNeeded(long now) {
+        if (now < nextDayStart) return;
+        // Credit the open session up to midnight, then start the new day empty
+        String carried = activePackage;
+        int carriedId = activeId;
+        closeSession(nextDayStart);
+        Arrays.fill(appHourMs, null);
+        setDay(now);
+        if (carried != null) {
+            activePackage = carried;
+            activeId = carriedId;
+            sessionStart = dayStart;
+        }
+    }
+
+    private void setDay(long now) {
+        int today = UsageRollupStore.localDay(now);
+        dayStart = UsageRollupStore.dayStart(today);
+        nextDayStart = UsageRollupStore.dayStart(today + 1);
+    }
+}
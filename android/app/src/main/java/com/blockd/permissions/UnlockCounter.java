@@ -0,0 +1,172 @@
+package com.blockd.permissions;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.blockd.UsageEventPipeline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Today's unlocks and pickups, counted incrementally. It consumes the shared UsageEventPipeline,
+ * so each call only sees the events after the last read, and the cost stays the same at 23:00 as
+ * at 08:00 instead of growing with every event since midnight. The checkpoint (day, last event
+ * time, counts) is kept on disk, so a restarted process carries on where it left off; it is
+ * written at most once a minute and on every new day, and whatever came after the last write is
+ * simply read again. Counts start over at local midnight.
+ */
+public class UnlockCounter implements UsageEventPipeline.Consumer {
+    private static final String TAG = "UnlockCounter";
+    private static final String FILE_NAME = "unlock_counter.bin";
+    private static final long SAVE_INTERVAL_MS = 60 * 1000L;
+
+    // UsageEvents.Event types
+    private static final int SCREEN_INTERACTIVE = 15;
+    private static final int KEYGUARD_HIDDEN = 18;
+
+    private static UnlockCounter instance;
+
+    private final File file;
+    private final UsageEventPipeline pipeline;
+
+    private int day = Integer.MIN_VALUE;
+    private long nextDayStart = Long.MIN_VALUE;
+    private long lastEventTime = 0; // latest event counted
+    // Events up to and including this time were counted before (checkpoint or an earlier day).
+    // Only moves on load and at midnight - later events in the same millisecond still count.
+    private long countedThrough = 0;
+    private long lastSave = 0; // elapsedRealtime
+    private int unlocks = 0;
+    private int pickups = 0;
+    private long lastBatchEvents = 0;
+
+    public static synchronized UnlockCounter getInstance(Context context) {
+        if (instance == null) {
+            instance = new UnlockCounter(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private UnlockCounter(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        this.pipeline = UsageEventPipeline.getInstance(context);
+        load();
+        countedThrough = lastEventTime;
+        long now = System.currentTimeMillis();
+        rollDayIfNeeded(now);
+        // Only what the checkpoint hasn't seen yet
+        pipeline.addConsumer(this, lastEventTime + 1);
+    }
+
+    /**
+     * Bring the counts up to now and return today's unlocks.
+     */
+    public int getUnlocks(long now) {
+        pipeline.ingest(now);
+        synchronized (this) {
+            rollDayIfNeeded(now);
+            return unlocks;
+        }
+    }
+
+    /**
+     * Bring the counts up to now and return today's pickups (screen turned on).
+     */
+    public int getPickups(long now) {
+        pipeline.ingest(now);
+        synchronized (this) {
+            rollDayIfNeeded(now);
+            return pickups;
+        }
+    }
+
+    /**
+     * Events in the last batch - stays small however late in the day it is.
+     */
+    public synchronized long getLastBatchEvents() {
+        return lastBatchEvents;
+    }
+
+    @Override
+    public synchronized void onEvents(UsageEventPipeline.EventBuffer events) {
+        long before = lastEventTime;
+        boolean newDay = false;
+        for (int i = 0; i < events.size(); i++) {
+            long timestamp = events.timestamp(i);
+            if (timestamp <= countedThrough) continue;
+            newDay |= rollDayIfNeeded(timestamp);
+            lastEventTime = timestamp;
+            int type = events.type(i);
+            if (type == KEYGUARD_HIDDEN) {
+                unlocks++;
+            } else if (type == SCREEN_INTERACTIVE) {
+                pickups++;
+            }
+        }
+        lastBatchEvents = events.size();
+        if (lastEventTime == before) return;
+        long elapsed = SystemClock.elapsedRealtime();
+        if (newDay || lastSave == 0 || elapsed - lastSave >= SAVE_INTERVAL_MS) {
+            lastSave = elapsed;
+            save();
+        }
+    }
+
+    /**
+     * Start over if now is on a later day. Returns true if it did.
+     */
+    private boolean rollDayIfNeeded(long now) {
+        if (now < nextDayStart && day != Integer.MIN_VALUE) return false;
+        int today = UsageRollupStore.localDay(now);
+        if (today == day) {
+            nextDayStart = UsageRollupStore.dayStart(today + 1);
+            return false;
+        }
+        day = today;
+        nextDayStart = UsageRollupStore.dayStart(today + 1);
+        // Nothing from before midnight counts towards the new day
+        countedThrough = Math.max(countedThrough, UsageRollupStore.dayStart(today) - 1);
+        lastEventTime = Math.max(lastEventTime, countedThrough);
+        unlocks = 0;
+        pickups = 0;
+        return true;
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            day = in.readInt();
+            lastEventTime = in.readLong();
+            unlocks = in.readInt();
+            pickups = in.readInt();
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading unlock checkpoint: " + e.getMessage());
+            day = Integer.MIN_VALUE; // recount today from midnight
+            lastEventTime = 0;
+        }
+    }
+
+    private void save() {
+        File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(day);
+            out.writeLong(lastEventTime);
+            out.writeInt(unlocks);
+            out.writeInt(pickups);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing unlock checkpoint: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Could not replace unlock checkpoint");
+        }
+    }
+}
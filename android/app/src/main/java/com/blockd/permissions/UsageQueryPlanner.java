@@ -0,0 +1,146 @@
+package com.blockd.permissions;
+
+import android.app.usage.UsageStats;
+import android.app.usage.UsageStatsManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Answers "foreground time per app over the last N days" from the cheapest sources that cover
+ * the range without overlap:
+ *
+ * 1. sealed days from the UsageRollupStore - no system query at all;
+ * 2. days the store has no record of (older than it, or skipped while the app was unused), from
+ *    the coarsest UsageStats buckets that fit inside them (yearly, then monthly, weekly, daily
+ *    for what is left) - one query per level at most;
+ * 3. today, from the events TodayUsage already consumed through the pipeline.
+ *
+ * Everything is summed into a UsageTotals (long[] by package id), so a 90-day view costs about
+ * what a 7-day view does.
+ */
+public class UsageQueryPlanner {
+    private static final String TAG = "UsageQueryPlanner";
+
+    private static final int[] LEVELS = {
+        UsageStatsManager.INTERVAL_YEARLY,
+        UsageStatsManager.INTERVAL_MONTHLY,
+        UsageStatsManager.INTERVAL_WEEKLY,
+        UsageStatsManager.INTERVAL_DAILY,
+    };
+    private static final String[] LEVEL_NAMES = {"yearly", "monthly", "weekly", "daily"};
+
+    private final UsageStatsManager usm;
+    private final UsageRollupStore rollups;
+    private final TodayUsage todayUsage;
+
+    private String lastPlan = "";
+
+    public UsageQueryPlanner(UsageStatsManager usm, UsageRollupStore rollups, TodayUsage todayUsage) {
+        this.usm = usm;
+        this.rollups = rollups;
+        this.todayUsage = todayUsage;
+    }
+
+    /**
+     * Foreground ms per app over the last days calendar days, today included.
+     */
+    public UsageTotals query(int days, long now) {
+        long start = System.currentTimeMillis();
+        UsageTotals totals = new UsageTotals();
+        StringBuilder plan = new StringBuilder("days=").append(days);
+
+        rollups.sealFinishedDays(now);
+        int today = UsageRollupStore.localDay(now);
+        int firstDay = today - Math.max(1, days) + 1;
+
+        if (firstDay < today) {
+            // 1. Sealed days - days the store doesn't have simply have no rows
+            rollups.sumInto(firstDay, today - 1, totals);
+
+            // 2. Days before the store or skipped by it: system buckets, coarse first
+            List<long[]> holes = new ArrayList<>();
+            int missingDays = 0;
+            for (int[] range : rollups.missingDays(firstDay, today - 1)) {
+                holes.add(new long[] {UsageRollupStore.dayStart(range[0]), UsageRollupStore.dayStart(range[1] + 1)});
+                missingDays += range[1] - range[0] + 1;
+            }
+            plan.append(" rollup=").append(today - firstDay - missingDays);
+            for (int level = 0; level < LEVELS.length && !holes.isEmpty(); level++) {
+                int used = fillHoles(LEVELS[level], holes, totals);
+                if (used > 0) plan.append(' ').append(LEVEL_NAMES[level]).append('=').append(used);
+            }
+        }
+
+        // 3. Today from events
+        todayUsage.addAppTotals(totals, now);
+        plan.append(" events=today");
+
+        plan.append(" in ").append(System.currentTimeMillis() - start).append("ms");
+        String description = plan.toString();
+        synchronized (this) {
+            lastPlan = description;
+        }
+        Log.d(TAG, description);
+        return totals;
+    }
+
+    /**
+     * Take every bucket of this interval that lies entirely inside a hole, add it to totals and
+     * cut it out of the hole. Returns how many buckets were used.
+     */
+    private int fillHoles(int interval, List<long[]> holes, UsageTotals totals) {
+        long from = holes.get(0)[0];
+        long to = holes.get(holes.size() - 1)[1];
+        List<UsageStats> stats;
+        try {
+            stats = usm.queryUsageStats(interval, from, to);
+        } catch (Exception e) {
+            Log.e(TAG, "Error querying buckets: " + e.getMessage());
+            return 0;
+        }
+        if (stats == null || stats.isEmpty()) return 0;
+
+        // A bucket is one time range shared by all of its packages' entries
+        Set<Long> accepted = new HashSet<>();
+        Set<Long> rejected = new HashSet<>();
+        for (UsageStats stat : stats) {
+            long bucketStart = stat.getFirstTimeStamp();
+            if (rejected.contains(bucketStart)) continue;
+            if (!accepted.contains(bucketStart)) {
+                if (!cutHole(holes, bucketStart, stat.getLastTimeStamp())) {
+                    rejected.add(bucketStart);
+                    continue;
+                }
+                accepted.add(bucketStart);
+            }
+            totals.add(stat.getPackageName(), stat.getTotalTimeInForeground());
+        }
+        return accepted.size();
+    }
+
+    /**
+     * If [start, end] fits inside one hole, remove it from that hole and return true.
+     */
+    private static boolean cutHole(List<long[]> holes, long start, long end) {
+        for (int i = 0; i < holes.size(); i++) {
+            long[] hole = holes.get(i);
+            if (start < hole[0] || end > hole[1]) continue;
+            holes.remove(i);
+            if (end < hole[1]) holes.add(i, new long[] {end, hole[1]});
+            if (start > hole[0]) holes.add(i, new long[] {hole[0], start});
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The sources the last query used, for logging and stats.
+     */
+    public synchronized String getLastPlan() {
+        return lastPlan;
+    }
+}
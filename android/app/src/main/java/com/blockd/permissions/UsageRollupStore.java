@@ -0,0 +1,517 @@
+package com.blockd.permissions;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.blockd.UsageEventPipeline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Local history of per-app foreground time, one row per day per package. Days are built from
+ * the shared UsageEventPipeline: foreground sessions are rebuilt from the resume/pause events
+ * and clipped at midnight, so each day gets exactly its own share. (UsageStats' daily buckets
+ * don't end at local midnight - the open one spans yesterday and today and would be counted in
+ * both.) A day is sealed once it is over and never recomputed. Multi-day views become range
+ * reads over rows in memory, and history is kept past the point where Android trims its events.
+ *
+ * On disk: usage_rollup.bin holds a header (magic, format, last sealed day) followed by fixed
+ * 16-byte rows (day, package id, foreground ms) in day order; usage_rollup_packages.bin holds the
+ * package names, the id being the position. Both are only appended to. Rows past the header's
+ * last sealed day are left over from an interrupted seal and are dropped on load.
+ * usage_rollup_gaps.bin lists (first day, last day) pairs the store skipped because it was not
+ * used for longer than it backfills; those days have no rows and must come from UsageStats.
+ */
+public class UsageRollupStore implements UsageEventPipeline.Consumer {
+    private static final String TAG = "UsageRollupStore";
+    private static final String ROWS_FILE = "usage_rollup.bin";
+    private static final String PACKAGES_FILE = "usage_rollup_packages.bin";
+    private static final String GAPS_FILE = "usage_rollup_gaps.bin";
+    private static final int MAGIC = 0x524F4C4C; // "ROLL"
+    private static final int FORMAT = 2; // 1 was sealed from daily buckets, with overlap
+    private static final int HEADER_BYTES = 12;
+    private static final int ROW_BYTES = 16;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    // How far back sealing goes - older events are usually trimmed by the OS already
+    private static final int BACKFILL_DAYS = 7;
+
+    // UsageEvents.Event types
+    private static final int MOVE_TO_FOREGROUND = 1;
+    private static final int MOVE_TO_BACKGROUND = 2;
+    private static final int SCREEN_NON_INTERACTIVE = 16;
+    private static final int DEVICE_SHUTDOWN = 26;
+
+    private static UsageRollupStore instance;
+
+    private final File rowsFile;
+    private final File packagesFile;
+    private final File gapsFile;
+    private final UsageEventPipeline pipeline;
+    private final Object registerLock = new Object(); // taken before the pipeline's lock
+    private boolean consuming = false;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int persistedNames = 0;
+
+    // Rows in day order
+    private int[] rowDay = new int[256];
+    private int[] rowId = new int[256];
+    private long[] rowMs = new long[256];
+    private int rowCount = 0;
+
+    // Row package id -> PackageIds id, filled as rows are read
+    private int[] globalIds = new int[0];
+
+    private int sealedThrough = -1; // local day number, -1 before the first seal
+    private int persistedRows = 0;
+    private int persistedThrough = -1; // sealedThrough as last written to disk
+    private final List<int[]> gaps = new ArrayList<>(); // {first, last} days never sealed, in order
+
+    // The day being built from events, and the foreground session still open in it
+    private int openDay = Integer.MIN_VALUE;
+    private long openDayEnd = Long.MAX_VALUE;
+    private final Map<String, Long> openTotals = new HashMap<>();
+    private String activePackage = null;
+    private long sessionStart = 0;
+
+    public static synchronized UsageRollupStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new UsageRollupStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private UsageRollupStore(Context context) {
+        this.rowsFile = new File(context.getFilesDir(), ROWS_FILE);
+        this.packagesFile = new File(context.getFilesDir(), PACKAGES_FILE);
+        this.gapsFile = new File(context.getFilesDir(), GAPS_FILE);
+        this.pipeline = UsageEventPipeline.getInstance(context);
+        load();
+    }
+
+    // =====================================================
+    // Queries
+    // =====================================================
+
+    /**
+     * Seal every day that ended before now. Cheap when there is nothing to do.
+     */
+    public void sealFinishedDays(long now) {
+        startConsuming(now);
+        pipeline.ingest(now);
+        synchronized (this) {
+            int sealedBefore = sealedThrough;
+            rollTo(now);
+            if (sealedThrough > persistedThrough && append(persistedRows, sealedThrough)) {
+                persistedRows = rowCount;
+                persistedThrough = sealedThrough;
+            }
+            if (sealedThrough > sealedBefore) {
+                Log.d(TAG, "Sealed through day " + sealedThrough + " (" + rowCount + " rows)");
+            }
+        }
+    }
+
+    /**
+     * Foreground ms of today so far, summed over the packages filter lets through.
+     */
+    public long todayTotal(long now, PackageFilter filter) {
+        startConsuming(now);
+        pipeline.ingest(now);
+        synchronized (this) {
+            rollTo(now);
+            long total = 0;
+            for (Map.Entry<String, Long> entry : openTotals.entrySet()) {
+                if (filter.include(entry.getKey())) total += entry.getValue();
+            }
+            if (activePackage != null && now > sessionStart && filter.include(activePackage)) {
+                total += now - sessionStart;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Add the foreground ms of the sealed days in [firstDay, lastDay] to totals.
+     */
+    public synchronized void sumInto(int firstDay, int lastDay, UsageTotals totals) {
+        for (int i = lowerBound(firstDay); i < rowCount && rowDay[i] <= lastDay; i++) {
+            totals.add(globalId(rowId[i]), rowMs[i]);
+        }
+    }
+
+    /**
+     * First day the store has rows for (MAX_VALUE before any seal); earlier days have to come
+     * from UsageStats.
+     */
+    public synchronized int getFirstDay() {
+        if (sealedThrough < 0) return Integer.MAX_VALUE;
+        return rowCount > 0 ? rowDay[0] : sealedThrough + 1;
+    }
+
+    /**
+     * Day ranges within [firstDay, lastDay] the store has no record of, as {first, last} pairs in
+     * order: the days before its first day and the gaps it skipped.
+     */
+    public synchronized List<int[]> missingDays(int firstDay, int lastDay) {
+        List<int[]> missing = new ArrayList<>();
+        int storeFirst = getFirstDay();
+        if (firstDay < storeFirst) {
+            missing.add(new int[] {firstDay, Math.min(lastDay, storeFirst - 1)});
+        }
+        for (int[] gap : gaps) {
+            int from = Math.max(Math.max(firstDay, gap[0]), storeFirst);
+            int to = Math.min(lastDay, gap[1]);
+            if (from <= to) missing.add(new int[] {from, to});
+        }
+        return missing;
+    }
+
+    /**
+     * Foreground ms of one sealed day, summed over the packages filter lets through.
+     */
+    public synchronized long dayTotal(int day, PackageFilter filter) {
+        long total = 0;
+        for (int i = lowerBound(day); i < rowCount && rowDay[i] == day; i++) {
+            if (filter.include(names.get(rowId[i]))) total += rowMs[i];
+        }
+        return total;
+    }
+
+    public interface PackageFilter {
+        boolean include(String packageName);
+    }
+
+    public synchronized int getSealedThrough() {
+        return sealedThrough;
+    }
+
+    public synchronized int getRowCount() {
+        return rowCount;
+    }
+
+    // =====================================================
+    // Days
+    // =====================================================
+
+    /**
+     * Local calendar day of a timestamp, counted from the epoch.
+     */
+    public static int localDay(long millis) {
+        return (int) Math.floorDiv(millis + TimeZone.getDefault().getOffset(millis), DAY_MS);
+    }
+
+    /**
+     * Local midnight at the start of day.
+     */
+    public static long dayStart(int day) {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.setTimeInMillis(day * DAY_MS);
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH), utc.get(Calendar.DAY_OF_MONTH));
+        return cal.getTimeInMillis();
+    }
+
+    // =====================================================
+    // Events
+    // =====================================================
+
+    /**
+     * Start building days from the first one not sealed yet. Registered on first use rather than
+     * on construction, so the catch-up read happens on a query thread.
+     */
+    private void startConsuming(long now) {
+        synchronized (registerLock) {
+            if (consuming) return;
+            long since;
+            synchronized (this) {
+                int today = localDay(now);
+                openDay = Math.max(sealedThrough + 1, today - BACKFILL_DAYS);
+                if (sealedThrough >= 0 && openDay > sealedThrough + 1) {
+                    // Too long unused - the events of those days may be gone, so they stay unsealed
+                    addGap(sealedThrough + 1, openDay - 1);
+                }
+                openDayEnd = dayStart(openDay + 1);
+                since = dayStart(openDay);
+            }
+            pipeline.addConsumer(this, since);
+            consuming = true;
+        }
+    }
+
+    @Override
+    public synchronized void onEvents(UsageEventPipeline.EventBuffer events) {
+        long openStart = dayStart(openDay);
+        for (int i = 0; i < events.size(); i++) {
+            long timestamp = events.timestamp(i);
+            if (timestamp < openStart) continue; // sealed already
+            rollTo(timestamp);
+            switch (events.type(i)) {
+                case MOVE_TO_FOREGROUND:
+                    closeSession(timestamp);
+                    activePackage = events.packageName(i);
+                    sessionStart = timestamp;
+                    break;
+                case MOVE_TO_BACKGROUND:
+                    if (events.packageName(i).equals(activePackage)) closeSession(timestamp);
+                    break;
+                case SCREEN_NON_INTERACTIVE:
+                case DEVICE_SHUTDOWN:
+                    closeSession(timestamp);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Seal every open day that ends at or before time; a session still running is cut at
+     * midnight and carried into the next day.
+     */
+    private void rollTo(long time) {
+        while (time >= openDayEnd) {
+            long nextStart = openDayEnd;
+            String carried = activePackage;
+            closeSession(nextStart);
+            for (Map.Entry<String, Long> entry : openTotals.entrySet()) {
+                if (entry.getValue() > 0) addRow(openDay, idFor(entry.getKey()), entry.getValue());
+            }
+            openTotals.clear();
+            sealedThrough = openDay;
+            openDay++;
+            if (carried != null) {
+                activePackage = carried;
+                sessionStart = nextStart;
+            }
+            openDayEnd = dayStart(openDay + 1);
+        }
+    }
+
+    private void closeSession(long end) {
+        if (activePackage != null && end > sessionStart) {
+            Long existing = openTotals.get(activePackage);
+            openTotals.put(activePackage, (existing != null ? existing : 0L) + end - sessionStart);
+        }
+        activePackage = null;
+    }
+
+    // =====================================================
+    // Rows
+    // =====================================================
+
+    private int lowerBound(int day) {
+        int lo = 0;
+        int hi = rowCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rowDay[mid] < day) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private void addRow(int day, int id, long ms) {
+        if (rowCount == rowDay.length) {
+            rowDay = Arrays.copyOf(rowDay, rowCount * 2);
+            rowId = Arrays.copyOf(rowId, rowCount * 2);
+            rowMs = Arrays.copyOf(rowMs, rowCount * 2);
+        }
+        rowDay[rowCount] = day;
+        rowId[rowCount] = id;
+        rowMs[rowCount] = ms;
+        rowCount++;
+    }
+
+    private int globalId(int id) {
+        if (id >= globalIds.length) {
+            int from = globalIds.length;
+            globalIds = Arrays.copyOf(globalIds, names.size());
+            for (int i = from; i < globalIds.length; i++) {
+                globalIds[i] = PackageIds.intern(names.get(i));
+            }
+        }
+        return globalIds[id];
+    }
+
+    private int idFor(String packageName) {
+        Integer id = ids.get(packageName);
+        if (id != null) return id;
+        ids.put(packageName, names.size());
+        names.add(packageName);
+        return names.size() - 1;
+    }
+
+    // =====================================================
+    // Gaps
+    // =====================================================
+
+    /**
+     * Remember that [first, last] will never be sealed. Written right away, before any later day
+     * can be sealed on top of it.
+     */
+    private void addGap(int first, int last) {
+        mergeGap(first, last);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(gapsFile, true)))) {
+            out.writeInt(first);
+            out.writeInt(last);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing rollup gap: " + e.getMessage());
+        }
+        Log.d(TAG, "Skipped days " + first + " to " + last);
+    }
+
+    private void mergeGap(int first, int last) {
+        int i = 0;
+        while (i < gaps.size() && gaps.get(i)[1] < first - 1) i++;
+        while (i < gaps.size() && gaps.get(i)[0] <= last + 1) {
+            int[] gap = gaps.remove(i);
+            first = Math.min(first, gap[0]);
+            last = Math.max(last, gap[1]);
+        }
+        gaps.add(i, new int[] {first, last});
+    }
+
+    private void loadGaps() {
+        if (!gapsFile.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(gapsFile)))) {
+            while (true) {
+                mergeGap(in.readInt(), in.readInt());
+            }
+        } catch (EOFException e) {
+            // end of the gap list
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading rollup gaps: " + e.getMessage());
+        }
+    }
+
+    // =====================================================
+    // Persistence
+    // =====================================================
+
+    private void load() {
+        if (!rowsFile.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(packagesFile)))) {
+            while (true) {
+                idFor(in.readUTF());
+            }
+        } catch (EOFException e) {
+            // end of the name list
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading rollup packages: " + e.getMessage());
+        }
+        persistedNames = names.size();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(rowsFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                Log.e(TAG, "Unknown rollup format, starting over");
+                reset();
+                return;
+            }
+            sealedThrough = in.readInt();
+            persistedThrough = sealedThrough;
+            long rows = (rowsFile.length() - HEADER_BYTES) / ROW_BYTES;
+            for (long i = 0; i < rows; i++) {
+                int day = in.readInt();
+                int id = in.readInt();
+                long ms = in.readLong();
+                // Rows of an interrupted seal, or of a name that never made it to disk
+                if (day > sealedThrough || id >= persistedNames) break;
+                addRow(day, id, ms);
+            }
+            persistedRows = rowCount;
+            loadGaps();
+            Log.d(TAG, "Loaded " + rowCount + " rows through day " + sealedThrough);
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading rollup: " + e.getMessage());
+        }
+    }
+
+    private void reset() {
+        ids.clear();
+        names.clear();
+        globalIds = new int[0];
+        persistedNames = 0;
+        rowCount = 0;
+        sealedThrough = -1;
+        persistedRows = 0;
+        persistedThrough = -1;
+        gaps.clear();
+        if ((rowsFile.exists() && !rowsFile.delete()) || (packagesFile.exists() && !packagesFile.delete())
+                || (gapsFile.exists() && !gapsFile.delete())) {
+            Log.e(TAG, "Could not delete rollup files");
+        }
+    }
+
+    /**
+     * Append new names and the rows from firstRow on, then move the header's sealed day.
+     * The header is written last, so a crash in between leaves rows that load() ignores.
+     */
+    private boolean append(int firstRow, int newSealedThrough) {
+        try {
+            if (names.size() > persistedNames) {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(packagesFile, true)))) {
+                    for (int i = persistedNames; i < names.size(); i++) {
+                        out.writeUTF(names.get(i));
+                    }
+                }
+                persistedNames = names.size();
+            }
+
+            try (RandomAccessFile file = new RandomAccessFile(rowsFile, "rw")) {
+                if (file.length() < HEADER_BYTES) {
+                    file.setLength(0);
+                    file.writeInt(MAGIC);
+                    file.writeInt(FORMAT);
+                    file.writeInt(persistedThrough);
+                }
+                // Cut off leftovers of an interrupted seal before appending
+                long end = HEADER_BYTES + (long) firstRow * ROW_BYTES;
+                file.setLength(end);
+                file.seek(end);
+                byte[] buffer = new byte[(rowCount - firstRow) * ROW_BYTES];
+                int pos = 0;
+                for (int i = firstRow; i < rowCount; i++) {
+                    pos = putInt(buffer, pos, rowDay[i]);
+                    pos = putInt(buffer, pos, rowId[i]);
+                    pos = putInt(buffer, pos, (int) (rowMs[i] >>> 32));
+                    pos = putInt(buffer, pos, (int) rowMs[i]);
+                }
+                file.write(buffer);
+                file.getFD().sync();
+                file.seek(8);
+                file.writeInt(newSealedThrough);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing rollup: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static int putInt(byte[] buffer, int pos, int value) {
+        buffer[pos] = (byte) (value >>> 24);
+        buffer[pos + 1] = (byte) (value >>> 16);
+        buffer[pos + 2] = (byte) (value >>> 8);
+        buffer[pos + 3] = (byte) value;
+        return pos + 4;
+    }
+}
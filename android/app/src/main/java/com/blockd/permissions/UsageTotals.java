@@ -0,0 +1,32 @@
+package com.blockd.permissions;
+
+import java.util.Arrays;
+
+/**
+ * Foreground ms per package, in a long[] indexed by PackageIds id.
+ */
+public final class UsageTotals {
+    private long[] ms = new long[Math.max(64, PackageIds.count())];
+
+    public void add(int id, long value) {
+        if (id >= ms.length) {
+            ms = Arrays.copyOf(ms, Math.max(id + 1, ms.length * 2));
+        }
+        ms[id] += value;
+    }
+
+    public void add(String packageName, long value) {
+        add(PackageIds.intern(packageName), value);
+    }
+
+    public long get(int id) {
+        return id < ms.length ? ms[id] : 0;
+    }
+
+    /**
+     * One past the highest id that may hold a value.
+     */
+    public int size() {
+        return ms.length;
+    }
+}
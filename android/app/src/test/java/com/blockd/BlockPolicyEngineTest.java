@@ -0,0 +1,278 @@
+package com.blockd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class BlockPolicyEngineTest {
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final long NOW = 1_700_000_000_000L;
+
+    // =====================================================
+    // Limit rules
+    // =====================================================
+
+    @Test
+    public void limitWithTimeLeftIsActiveButNotBlocking() {
+        BlockPolicyEngine.Rule rule = new BlockPolicyEngine.Rule(BlockPolicyEngine.MODE_LIMIT, 0, 30);
+        BlockPolicyEngine.Decision decision = BlockPolicyEngine.evaluate(rule, NOW, 10 * MINUTE_MS);
+
+        assertEquals(BlockPolicyEngine.BlockType.LIMIT_ACTIVE, decision.type);
+        assertEquals(20 * MINUTE_MS, decision.remainingMs);
+        assertEquals(20, decision.remainingMinutes);
+        assertEquals(30, decision.dailyLimitMinutes);
+        assertTrue(decision.isActive());
+        assertFalse(decision.isBlocking());
+    }
+
+    @Test
+    public void limitRoundsRemainingMinutesUp() {
+        BlockPolicyEngine.Rule rule = new BlockPolicyEngine.Rule(BlockPolicyEngine.MODE_LIMIT, 0, 30);
+        BlockPolicyEngine.Decision decision = BlockPolicyEngine.evaluate(rule, NOW, 30 * MINUTE_MS - 30 * 1000L);
+
+        assertEquals(BlockPolicyEngine.BlockType.LIMIT_ACTIVE, decision.type);
+        assertEquals(30 * 1000L, decision.remainingMs);
+        assertEquals(1, decision.remainingMinutes);
+    }
+
+    @Test
+    public void limitBlocksOnceUsedUp() {
+        BlockPolicyEngine.Rule rule = new BlockPolicyEngine.Rule(BlockPolicyEngine.MODE_LIMIT, 0, 30);
+
+        BlockPolicyEngine.Decision exact = BlockPolicyEngine.evaluate(rule, NOW, 30 * MINUTE_MS);
+        assertEquals(BlockPolicyEngine.BlockType.LIMIT_EXCEEDED, exact.type);
+        assertTrue(exact.isBlocking());
+        assertEquals(0, exact.remainingMs);
+
+        BlockPolicyEngine.Decision over = BlockPolicyEngine.evaluate(rule, NOW, 2 * HOUR_MS);
+        assertEquals(BlockPolicyEngine.BlockType.LIMIT_EXCEEDED, over.type);
+    }
+
+    @Test
+    public void engineReadsUsageOnlyForLimitRules() {
+        long[] lookups = {0};
+        BlockPolicyEngine engine = new BlockPolicyEngine(pkg -> {
+            lookups[0]++;
+            return 45 * MINUTE_MS;
+        });
+        engine.putRule("com.limit", BlockPolicyEngine.MODE_LIMIT, 0, 60);
+        engine.putRule("com.detox", BlockPolicyEngine.MODE_DETOX, NOW + HOUR_MS, 0);
+
+        BlockPolicyEngine.Decision limit = engine.evaluate("com.limit", NOW);
+        assertEquals(BlockPolicyEngine.BlockType.LIMIT_ACTIVE, limit.type);
+        assertEquals(15, limit.remainingMinutes);
+        assertEquals(1, lookups[0]);
+
+        engine.evaluate("com.detox", NOW);
+        engine.evaluate("com.unknown", NOW);
+        assertEquals(1, lookups[0]);
+    }
+
+    // =====================================================
+    // Detox rules
+    // =====================================================
+
+    @Test
+    public void detoxBlocksUntilItsEndTime() {
+        long end = NOW + 2 * DAY_MS + 3 * HOUR_MS;
+        BlockPolicyEngine.Rule rule = new BlockPolicyEngine.Rule(BlockPolicyEngine.MODE_DETOX, end, 0);
+        BlockPolicyEngine.Decision decision = BlockPolicyEngine.evaluate(rule, NOW, 0);
+
+        assertEquals(BlockPolicyEngine.BlockType.DETOX, decision.type);
+        assertEquals(end - NOW, decision.remainingMs);
+        assertEquals(2, decision.remainingDays);
+        assertTrue(decision.isBlocking());
+    }
+
+    @Test
+    public void detoxIgnoresUsage() {
+        BlockPolicyEngine.Rule rule = new BlockPolicyEngine.Rule(BlockPolicyEngine.MODE_DETOX, NOW + HOUR_MS, 0);
+        BlockPolicyEngine.Decision decision = BlockPolicyEngine.evaluate(rule, NOW, 10 * DAY_MS);
+
+        assertEquals(BlockPolicyEngine.BlockType.DETOX, decision.type);
+    }
+
+    // =====================================================
+    // Schedule boundaries - rules that switch on the clock
+    // =====================================================
+
+    @Test
+    public void detoxEndsExactlyAtItsEndTime() {
+        long end = NOW + HOUR_MS;
+        BlockPolicyEngine.Rule rule = new BlockPolicyEngine.Rule(BlockPolicyEngine.MODE_DETOX, end, 0);
+
+        assertEquals(BlockPolicyEngine.BlockType.DETOX, BlockPolicyEngine.evaluate(rule, end - 1, 0).type);
+        assertSame(BlockPolicyEngine.Decision.NONE, BlockPolicyEngine.evaluate(rule, end, 0));
+        assertSame(BlockPolicyEngine.Decision.NONE, BlockPolicyEngine.evaluate(rule, end + DAY_MS, 0));
+    }
+
+    @Test
+    public void limitFollowsUsageAcrossTheDay() {
+        BlockPolicyEngine.Rule rule = new BlockPolicyEngine.Rule(BlockPolicyEngine.MODE_LIMIT, 0, 60);
+
+        // Morning, evening, and after the day's usage reset at midnight
+        assertEquals(BlockPolicyEngine.BlockType.LIMIT_ACTIVE, BlockPolicyEngine.evaluate(rule, NOW, 5 * MINUTE_MS).type);
+        assertEquals(BlockPolicyEngine.BlockType.LIMIT_EXCEEDED, BlockPolicyEngine.evaluate(rule, NOW + 12 * HOUR_MS, 61 * MINUTE_MS).type);
+        assertEquals(BlockPolicyEngine.BlockType.LIMIT_ACTIVE, BlockPolicyEngine.evaluate(rule, NOW + DAY_MS, 0).type);
+    }
+
+    @Test
+    public void unknownModeNeverBlocks() {
+        BlockPolicyEngine.Rule rule = new BlockPolicyEngine.Rule("schedule", NOW + HOUR_MS, 30);
+
+        assertSame(BlockPolicyEngine.Decision.NONE, BlockPolicyEngine.evaluate(rule, NOW, DAY_MS));
+    }
+
+    @Test
+    public void packageWithoutRuleIsNotBlocked() {
+        BlockPolicyEngine engine = new BlockPolicyEngine(pkg -> 0);
+
+        assertSame(BlockPolicyEngine.Decision.NONE, engine.evaluate("com.example", NOW));
+    }
+
+    // =====================================================
+    // Concurrent updates
+    // =====================================================
+
+    private static final int WRITERS = 8;
+    private static final int ROUNDS = 500;
+    private static final int CHANGELOG_SIZE = 64;
+
+    /**
+     * Writers put and remove on their own packages at the same time while a replica
+     * follows through changesSince. No change may be lost: the final rules, the generation and
+     * the replica must all account for every single update.
+     */
+    @Test
+    public void concurrentUpdatesAreNotLost() throws Exception {
+        BlockPolicyEngine engine = new BlockPolicyEngine(pkg -> 0);
+        Map<String, BlockPolicyEngine.Rule> replica = new HashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < WRITERS; t++) {
+            int writer = t;
+            writers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        engine.putRule(pkg(writer, i), BlockPolicyEngine.MODE_LIMIT, 0, i);
+                        if (i % 2 == 1) {
+                            assertTrue(engine.removeRule(pkg(writer, i)));
+                        }
+                        if (i % 5 == 0) {
+                            String temp = pkg(writer, i) + ".tmp";
+                            engine.putRule(temp, BlockPolicyEngine.MODE_DETOX, 1, 0);
+                            assertTrue(engine.removeRule(temp));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+
+        Thread follower = new Thread(() -> {
+            long seen = 0;
+            try {
+                start.await();
+                while (writing.get()) {
+                    seen = follow(engine, replica, seen);
+                }
+                follow(engine, replica, seen);
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+
+        for (Thread writer : writers) writer.start();
+        follower.start();
+        start.countDown();
+        for (Thread writer : writers) writer.join();
+        writing.set(false);
+        follower.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+
+        // Every put and remove moved the generation by exactly one
+        long perWriter = ROUNDS + ROUNDS / 2 + 2 * ((ROUNDS + 4) / 5);
+        BlockPolicyEngine.Snapshot snapshot = engine.snapshot();
+        assertEquals(WRITERS * perWriter, snapshot.generation);
+
+        // Only the even packages survive, each with its own last value
+        assertEquals(WRITERS * ROUNDS / 2, snapshot.size());
+        for (int t = 0; t < WRITERS; t++) {
+            for (int i = 0; i < ROUNDS; i++) {
+                BlockPolicyEngine.Rule rule = snapshot.get(pkg(t, i));
+                if (i % 2 == 0) {
+                    assertNotNull(pkg(t, i), rule);
+                    assertEquals(i, rule.dailyLimitMinutes);
+                } else {
+                    assertNull(pkg(t, i), rule);
+                }
+                assertFalse(snapshot.contains(pkg(t, i) + ".tmp"));
+            }
+        }
+
+        // The changelog is contiguous and ends at the current generation
+        List<BlockPolicyEngine.Change> tail = snapshot.changesSince(snapshot.generation - CHANGELOG_SIZE);
+        assertNotNull(tail);
+        assertEquals(CHANGELOG_SIZE, tail.size());
+        for (int i = 0; i < tail.size(); i++) {
+            assertEquals(snapshot.generation - CHANGELOG_SIZE + 1 + i, tail.get(i).generation);
+        }
+        assertNull(snapshot.changesSince(snapshot.generation - CHANGELOG_SIZE - 1));
+        assertTrue(snapshot.changesSince(snapshot.generation).isEmpty());
+
+        // The replica caught up from deltas (or full copies when it fell behind) to the same rules
+        assertSameRules(snapshot.asMap(), replica);
+    }
+
+    /**
+     * Bring replica up to engine, from deltas when the changelog still has them.
+     */
+    private static long follow(BlockPolicyEngine engine, Map<String, BlockPolicyEngine.Rule> replica, long seen) {
+        BlockPolicyEngine.Snapshot snapshot = engine.snapshot();
+        List<BlockPolicyEngine.Change> changes = snapshot.changesSince(seen);
+        if (changes == null) {
+            replica.clear();
+            replica.putAll(snapshot.asMap());
+        } else {
+            for (BlockPolicyEngine.Change change : changes) {
+                if (change.isRemove()) replica.remove(change.packageName);
+                else replica.put(change.packageName, change.rule);
+            }
+        }
+        return snapshot.generation;
+    }
+
+    private static void assertSameRules(Map<String, BlockPolicyEngine.Rule> expected, Map<String, BlockPolicyEngine.Rule> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, BlockPolicyEngine.Rule> entry : expected.entrySet()) {
+            BlockPolicyEngine.Rule rule = actual.get(entry.getKey());
+            assertEquals(entry.getValue().mode, rule.mode);
+            assertEquals(entry.getValue().detoxEndTime, rule.detoxEndTime);
+            assertEquals(entry.getValue().dailyLimitMinutes, rule.dailyLimitMinutes);
+        }
+    }
+
+    private static String pkg(int writer, int i) {
+        return "com.test.w" + writer + ".p" + i;
+    }
+}
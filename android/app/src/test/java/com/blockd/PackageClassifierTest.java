@@ -0,0 +1,84 @@
+package com.blockd;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class PackageClassifierTest {
+    private static final String SELF = "com.blockd";
+
+    private final BlockPolicyEngine policy = new BlockPolicyEngine(pkg -> 0);
+    private final PackageClassifier classifier = new PackageClassifier(SELF, policy);
+
+    @Test
+    public void classifiesSelfLauncherBlockedAndAllowed() {
+        policy.putRule("com.video", BlockPolicyEngine.MODE_LIMIT, 0, 30);
+        classifier.setLauncherPackages(Collections.singleton("com.launcher"));
+
+        assertEquals(PackageClassifier.Verdict.IGNORE, classifier.classify(SELF));
+        assertEquals(PackageClassifier.Verdict.LAUNCHER, classifier.classify("com.launcher"));
+        assertEquals(PackageClassifier.Verdict.BLOCKED, classifier.classify("com.video"));
+        assertEquals(PackageClassifier.Verdict.ALLOWED, classifier.classify("com.notes"));
+    }
+
+    @Test
+    public void launcherWinsOverPolicy() {
+        policy.putRule("com.launcher", BlockPolicyEngine.MODE_DETOX, Long.MAX_VALUE, 0);
+        classifier.setLauncherPackages(Collections.singleton("com.launcher"));
+
+        assertEquals(PackageClassifier.Verdict.LAUNCHER, classifier.classify("com.launcher"));
+    }
+
+    @Test
+    public void newRuleInvalidatesCachedVerdict() {
+        assertEquals(PackageClassifier.Verdict.ALLOWED, classifier.classify("com.video"));
+        assertEquals(1, classifier.cachedVerdictCount());
+
+        policy.putRule("com.video", BlockPolicyEngine.MODE_LIMIT, 0, 30);
+        assertEquals(PackageClassifier.Verdict.BLOCKED, classifier.classify("com.video"));
+
+        policy.removeRule("com.video");
+        assertEquals(PackageClassifier.Verdict.ALLOWED, classifier.classify("com.video"));
+    }
+
+    @Test
+    public void generationChangeDropsWholeCache() {
+        classifier.classify("com.a");
+        classifier.classify("com.b");
+        classifier.classify("com.c");
+        assertEquals(3, classifier.cachedVerdictCount());
+
+        // A change to an unrelated package still moves the generation
+        policy.putRule("com.other", BlockPolicyEngine.MODE_LIMIT, 0, 10);
+        classifier.classify("com.a");
+        assertEquals(1, classifier.cachedVerdictCount());
+    }
+
+    @Test
+    public void unchangedGenerationKeepsCache() {
+        classifier.classify("com.a");
+        classifier.classify("com.b");
+        classifier.classify("com.a");
+
+        assertEquals(2, classifier.cachedVerdictCount());
+    }
+
+    @Test
+    public void replaceAllInvalidatesCache() {
+        policy.putRule("com.video", BlockPolicyEngine.MODE_LIMIT, 0, 30);
+        assertEquals(PackageClassifier.Verdict.BLOCKED, classifier.classify("com.video"));
+
+        policy.clear();
+        assertEquals(PackageClassifier.Verdict.ALLOWED, classifier.classify("com.video"));
+    }
+
+    @Test
+    public void newLauncherSetInvalidatesCache() {
+        assertEquals(PackageClassifier.Verdict.ALLOWED, classifier.classify("com.launcher"));
+
+        classifier.setLauncherPackages(Collections.singleton("com.launcher"));
+        assertEquals(PackageClassifier.Verdict.LAUNCHER, classifier.classify("com.launcher"));
+    }
+}
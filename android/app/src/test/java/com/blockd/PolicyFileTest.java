@@ -0,0 +1,85 @@
+package com.blockd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Map;
+
+public class PolicyFileTest {
+    @Rule
+    public TemporaryFolder dir = new TemporaryFolder();
+
+    @Test
+    public void readerAppliesLoggedChangesSinceItsGeneration() throws Exception {
+        BlockPolicyEngine policy = new BlockPolicyEngine(pkg -> 0);
+        PolicyFile writer = new PolicyFile(dir.getRoot());
+        PolicyFile reader = new PolicyFile(dir.getRoot());
+
+        policy.putRule("com.a", BlockPolicyEngine.MODE_LIMIT, 0, 30);
+        long persisted = policy.generation();
+        writer.write(policy.snapshot().asMap(), null);
+
+        PolicyFile.Contents first = reader.readIfChanged(0);
+        assertNull(first.changes);
+        assertEquals(1, first.rules.size());
+
+        policy.putRule("com.b", BlockPolicyEngine.MODE_DETOX, 5000, 0);
+        policy.removeRule("com.a");
+        BlockPolicyEngine.Snapshot snapshot = policy.snapshot();
+        writer.write(snapshot.asMap(), snapshot.changesSince(persisted));
+
+        PolicyFile.Contents second = reader.readIfChanged(first.generation);
+        assertNotNull(second.changes);
+        assertEquals(2, second.changes.size());
+        assertTrue(second.changes.get(1).isRemove());
+        assertEquals(Collections.singleton("com.b"), second.rules.keySet());
+        assertEquals(5000, second.rules.get("com.b").detoxEndTime);
+
+        assertNull(reader.readIfChanged(second.generation));
+    }
+
+    @Test
+    public void readerWithoutThatGenerationReadsEverything() throws Exception {
+        PolicyFile writer = new PolicyFile(dir.getRoot());
+        writer.write(rules("com.a"), null);
+        long generation = writer.write(rules("com.a", "com.b"), Collections.<BlockPolicyEngine.Change>emptyList());
+
+        PolicyFile.Contents contents = new PolicyFile(dir.getRoot()).readIfChanged(generation - 1);
+        assertNull(contents.changes);
+        assertEquals(2, contents.rules.size());
+    }
+
+    @Test
+    public void generationKeepsGrowingPastABadHeader() throws Exception {
+        PolicyFile writer = new PolicyFile(dir.getRoot());
+        writer.write(rules("com.a"), null);
+        long second = writer.write(rules("com.b"), null);
+
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir.getRoot(), PolicyFile.FILE_NAME), "rw")) {
+            raf.writeInt(0);
+        }
+        assertEquals(0, writer.readGeneration());
+        assertNull(new PolicyFile(dir.getRoot()).readIfChanged(0));
+
+        long third = writer.write(rules("com.c"), null);
+        assertEquals(second + 1, third);
+        assertEquals(third, writer.readGeneration());
+    }
+
+    private static Map<String, BlockPolicyEngine.Rule> rules(String... packages) {
+        BlockPolicyEngine policy = new BlockPolicyEngine(pkg -> 0);
+        for (String pkg : packages) {
+            policy.putRule(pkg, BlockPolicyEngine.MODE_LIMIT, 0, 10);
+        }
+        return policy.snapshot().asMap();
+    }
+}
@@ -0,0 +1,38 @@
+import { useEffect, useState } from 'react';
+import { NativeModules } from 'react-native';
+
+const { PermissionsModule } = NativeModules;
+
+// Native modules return icons as file:// URIs; anything else is taken as a Base64 PNG.
+export const iconUri = (icon: string): string =>
+    icon.startsWith('file://') || icon.startsWith('content://') ? icon : `data:image/png;base64,${icon}`;
+
+/**
+ * Current icon URIs for the given apps, looked up on this device when they are drawn. An app
+ * that is not installed maps to '' (or is missing until the lookup finishes), so callers
+ * show their placeholder instead of a broken image.
+ */
+export const useAppIcons = (packageNames: string[]): { [packageName: string]: string } => {
+    const [icons, setIcons] = useState<{ [packageName: string]: string }>({});
+    const key = packageNames.join(',');
+
+    useEffect(() => {
+        if (!PermissionsModule?.getAppIcons || packageNames.length === 0) return;
+        let active = true;
+        PermissionsModule.getAppIcons(packageNames)
+            .then((loaded: { [packageName: string]: string }) => {
+                if (active) setIcons(loaded);
+            })
+            .catch(() => {});
+        return () => {
+            active = false;
+        };
+    }, [key]);
+
+    return icons;
+};
+
+export const useAppIcon = (packageName?: string): string => {
+    const icons = useAppIcons(packageName ? [packageName] : []);
+    return packageName ? icons[packageName] || '' : '';
+};
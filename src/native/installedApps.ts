@@ -0,0 +1,56 @@
+import { NativeEventEmitter, NativeModules } from 'react-native';
+import type { AppUsage } from './usageTypes';
+
+const { PermissionsModule } = NativeModules;
+
+const DEFAULT_PAGE_SIZE = 30;
+let nextStreamId = 1;
+
+interface AppsChunk {
+    streamId: number;
+    cursor: number;
+    nextCursor: number;
+    total: number;
+    apps: AppUsage[];
+}
+
+interface IconsChunk {
+    streamId: number;
+    cursor: number;
+    done: boolean;
+    icons: { [packageName: string]: string };
+}
+
+/**
+ * Stream the installed-app list: pages of labels arrive first, icons are filled in afterwards.
+ * Returns a function that cancels the stream and removes the listeners.
+ */
+export const streamInstalledApps = (
+    onApps: (apps: AppUsage[], total: number) => void,
+    onIcons: (icons: { [packageName: string]: string }, done: boolean) => void,
+    pageSize: number = DEFAULT_PAGE_SIZE,
+): (() => void) => {
+    const streamId = nextStreamId++;
+    const emitter = new NativeEventEmitter(PermissionsModule);
+
+    const appsSub = emitter.addListener('onInstalledAppsChunk', (chunk: AppsChunk) => {
+        if (chunk.streamId === streamId) onApps(chunk.apps, chunk.total);
+    });
+    const iconsSub = emitter.addListener('onInstalledAppIcons', (chunk: IconsChunk) => {
+        if (chunk.streamId !== streamId) return;
+        onIcons(chunk.icons, chunk.done);
+        if (chunk.done) cleanup();
+    });
+
+    const cleanup = () => {
+        appsSub.remove();
+        iconsSub.remove();
+    };
+
+    PermissionsModule.streamInstalledApps(streamId, pageSize);
+
+    return () => {
+        PermissionsModule.cancelInstalledAppsStream(streamId);
+        cleanup();
+    };
+};
@@ -0,0 +1,22 @@
+// Shapes returned by the Java PermissionsModule
+
+export type PermissionFlags = {
+    usageStats: boolean;
+    overlay: boolean;
+    battery: boolean;
+};
+
+export type AppUsage = {
+    packageName: string;
+    appName: string;
+    usageMinutes: number;
+    icon: string; // file:// URI of a cached PNG
+};
+
+export type DashboardSnapshot = {
+    apps: Array<AppUsage>; // today, most used first
+    totalMinutes: number;
+    unlocks: number;
+    pickups: number;
+    weekly: Array<number>; // minutes per day, oldest first, today last
+};
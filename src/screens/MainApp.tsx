@@ -26,6 +26,8 @@ import { CancelFlow } from './overlays/CancelFlow';
 import auth from '@react-native-firebase/auth';
 import firestore from '@react-native-firebase/firestore';
 import AsyncStorage from '@react-native-async-storage/async-storage';
+import { iconUri, useAppIcons } from '../native/appIcon';
+import { streamInstalledApps } from '../native/installedApps';
 
 const { width, height } = Dimensions.get('window');
 const { PermissionsModule, BlockingModule } = NativeModules;
@@ -234,6 +236,8 @@ const SimpleBarChart: React.FC<{ data: number[]; isDark: boolean }> = ({ data, i
 // DASHBOARD TAB (Premium Metal Design)
 // ============================================
 
+let dashboardMounts = 0;
+
 const DashboardTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
     const { theme } = useTheme();
     const [todayUsage, setTodayUsage] = useState<AppData[]>([]);
@@ -245,11 +249,19 @@ const DashboardTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
     const [selectedDay, setSelectedDay] = useState<number | null>(null);
 
     useEffect(() => {
-        loadData();
+        let active = true;
+        // Scopes cancellation to this mount - other screens' queries keep running
+        const queryToken = `dashboard-${++dashboardMounts}`;
+        loadData(() => active, queryToken);
         loadUserName();
         limitsService.loadLimits();
         const unsub = limitsService.subscribe(setLimits);
-        return unsub;
+        return () => {
+            active = false;
+            // Drop queries this screen no longer needs
+            PermissionsModule.cancelPendingQueries?.(queryToken);
+            unsub();
+        };
     }, []);
 
     const loadUserName = async () => {
@@ -267,17 +279,17 @@ const DashboardTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
         }
     };
 
-    const loadData = async () => {
+    const loadData = async (isActive: () => boolean = () => true, queryToken: string = 'dashboard') => {
         try {
-            const usage = await PermissionsModule.getTodayUsage();
-            if (usage) setTodayUsage(usage);
-
-            const unlocks = await PermissionsModule.getUnlockCountToday();
-            setUnlockCount(unlocks || 0);
-
-            const weekly = await PermissionsModule.getWeeklyUsage();
-            if (weekly && weekly.length === 7) setWeeklyData(weekly);
-        } catch (e) {
+            // Apps, unlocks and the week from one native pass over the usage events
+            const snapshot = await PermissionsModule.getDashboardSnapshot(queryToken);
+            if (!isActive() || !snapshot) return;
+
+            if (snapshot.apps) setTodayUsage(snapshot.apps);
+            setUnlockCount(snapshot.unlocks || 0);
+            if (snapshot.weekly && snapshot.weekly.length === 7) setWeeklyData(snapshot.weekly);
+        } catch (e: any) {
+            if (e?.code === 'CANCELLED') return;
             console.log('Load data error:', e);
         }
     };
@@ -402,7 +414,7 @@ const DashboardTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
                             <View style={styles.appSlotLeft}>
                                 <View style={[styles.appSlotIcon, { backgroundColor: isDark ? 'rgba(255,255,255,0.08)' : 'rgba(0,0,0,0.06)' }]}>
                                     {app.icon ? (
-                                        <Image source={{ uri: `data:image/png;base64,${app.icon}` }} style={{ width: 22, height: 22, borderRadius: 5 }} />
+                                        <Image source={{ uri: iconUri(app.icon) }} style={{ width: 22, height: 22, borderRadius: 5 }} />
                                     ) : (
                                         <Text variant="caption" weight="bold">{app.appName.charAt(0)}</Text>
                                     )}
@@ -504,7 +516,7 @@ const DashboardTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
                                 <View style={styles.appSlotLeft}>
                                     <View style={[styles.appSlotIcon, { backgroundColor: isDark ? 'rgba(255,255,255,0.08)' : 'rgba(0,0,0,0.06)' }]}>
                                         {app.icon ? (
-                                            <Image source={{ uri: `data:image/png;base64,${app.icon}` }} style={{ width: 22, height: 22, borderRadius: 5 }} />
+                                            <Image source={{ uri: iconUri(app.icon) }} style={{ width: 22, height: 22, borderRadius: 5 }} />
                                         ) : (
                                             <Text variant="caption" weight="bold">{app.appName.charAt(0)}</Text>
                                         )}
@@ -815,22 +827,26 @@ const LimitsTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
     const [detoxDays, setDetoxDays] = useState(7);
     const [showDetail, setShowDetail] = useState(false);
     const [detailLimit, setDetailLimit] = useState<AppLimit | null>(null);
+    const limitIcons = useAppIcons(limits.map(l => l.packageName));
     const [showCancelFlow, setShowCancelFlow] = useState(false);
 
     useEffect(() => {
         limitsService.loadLimits();
         const unsub = limitsService.subscribe(setLimits);
-        loadAllApps();
-        return unsub;
+        const cancelApps = loadAllApps();
+        return () => {
+            unsub();
+            cancelApps();
+        };
     }, []);
 
-    const loadAllApps = async () => {
-        try {
-            const apps = await PermissionsModule.getAllInstalledApps();
-            if (apps) setAllApps(apps);
-        } catch (e) {
-            console.log('Load apps error:', e);
-        }
+    // Labels show up page by page right away; icons are filled in as they are rendered
+    const loadAllApps = () => {
+        setAllApps([]);
+        return streamInstalledApps(
+            (apps) => setAllApps(prev => [...prev, ...apps]),
+            (icons) => setAllApps(prev => prev.map(app => icons[app.packageName] ? { ...app, icon: icons[app.packageName] } : app)),
+        );
     };
 
     const handleSelectApp = (app: AppData) => {
@@ -844,7 +860,6 @@ const LimitsTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
         const newLimit: AppLimit = {
             packageName: selectedApp.packageName,
             appName: selectedApp.appName,
-            icon: selectedApp.icon,
             mode,
             dailyLimitMinutes: mode === 'limit' ? limitValue : undefined,
             detoxEndDate: mode === 'detox' ? new Date(Date.now() + detoxDays * 24 * 60 * 60 * 1000).toISOString() : undefined,
@@ -945,8 +960,8 @@ const LimitsTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
                     {activeLimits.map((limit, i) => (
                         <TouchableOpacity key={i} activeOpacity={0.7} onPress={() => handleLimitPress(limit)}>
                             <LimitCard>
-                                {limit.icon ? (
-                                    <Image source={{ uri: `data:image/png;base64,${limit.icon}` }} style={{ width: 44, height: 44, borderRadius: 12 }} />
+                                {limitIcons[limit.packageName] ? (
+                                    <Image source={{ uri: iconUri(limitIcons[limit.packageName]) }} style={{ width: 44, height: 44, borderRadius: 12 }} />
                                 ) : (
                                     <View style={{ width: 44, height: 44, borderRadius: 12, backgroundColor: isDark ? 'rgba(255,255,255,0.1)' : 'rgba(0,0,0,0.06)', alignItems: 'center', justifyContent: 'center' }}>
                                         <Text variant="body" weight="bold">{limit.appName.charAt(0)}</Text>
@@ -1001,7 +1016,7 @@ const LimitsTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
                             <TouchableOpacity key={i} onPress={() => handleSelectApp(app)} activeOpacity={0.7}>
                                 <View style={[styles.appRow, { backgroundColor: isDark ? 'rgba(255,255,255,0.05)' : 'rgba(0,0,0,0.03)', borderRadius: 12, marginBottom: spacing[2], padding: spacing[3] }]}>
                                     {app.icon ? (
-                                        <Image source={{ uri: `data:image/png;base64,${app.icon}` }} style={styles.appIcon} />
+                                        <Image source={{ uri: iconUri(app.icon) }} style={styles.appIcon} />
                                     ) : (
                                         <View style={[styles.appIconPlaceholder, { backgroundColor: isDark ? 'rgba(255,255,255,0.1)' : 'rgba(0,0,0,0.06)' }]}>
                                             <Text variant="caption" weight="bold">{app.appName.charAt(0)}</Text>
@@ -1029,7 +1044,7 @@ const LimitsTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
                             <>
                                 <View style={{ alignItems: 'center', marginBottom: spacing[6] }}>
                                     {selectedApp.icon ? (
-                                        <Image source={{ uri: `data:image/png;base64,${selectedApp.icon}` }} style={{ width: 64, height: 64, borderRadius: 16 }} />
+                                        <Image source={{ uri: iconUri(selectedApp.icon) }} style={{ width: 64, height: 64, borderRadius: 16 }} />
                                     ) : (
                                         <View style={[styles.limitIconPlaceholder, { width: 64, height: 64, borderRadius: 16 }]}>
                                             <Text variant="h2" weight="bold">{selectedApp.appName.charAt(0)}</Text>
@@ -1117,8 +1132,8 @@ const LimitsTab: React.FC<{ isDark: boolean }> = ({ isDark }) => {
                     {detailLimit && (
                         <View style={{ flex: 1, padding: spacing[4] }}>
                             <View style={{ alignItems: 'center', marginBottom: spacing[6] }}>
-                                {detailLimit.icon ? (
-                                    <Image source={{ uri: `data:image/png;base64,${detailLimit.icon}` }} style={{ width: 64, height: 64, borderRadius: 16 }} />
+                                {limitIcons[detailLimit.packageName] ? (
+                                    <Image source={{ uri: iconUri(limitIcons[detailLimit.packageName]) }} style={{ width: 64, height: 64, borderRadius: 16 }} />
                                 ) : (
                                     <View style={[styles.limitIconPlaceholder, { width: 64, height: 64, borderRadius: 16 }]}>
                                         <Text variant="h2" weight="bold">{detailLimit.appName.charAt(0)}</Text>
@@ -15,6 +15,7 @@ import LinearGradient from 'react-native-linear-gradient';
 import { useTheme } from '../../theme';
 import { spacing } from '../../theme/theme';
 import { Text } from '../../components';
+import { iconUri } from '../../native/appIcon';
 
 const { width, height } = Dimensions.get('window');
 const { PermissionsModule } = NativeModules;
@@ -179,7 +180,7 @@ export const AppSelectionScreen: React.FC<{ onNext: () => void; onBack?: () => v
                                     borderColor: isSelected ? (isDark ? 'rgba(255,255,255,0.25)' : 'rgba(0,0,0,0.15)') : (isDark ? 'rgba(255,255,255,0.08)' : 'rgba(0,0,0,0.05)')
                                 }]}>
                                     {app.icon ? (
-                                        <Image source={{ uri: `data:image/png;base64,${app.icon}` }} style={styles.appIcon} />
+                                        <Image source={{ uri: iconUri(app.icon) }} style={styles.appIcon} />
                                     ) : (
                                         <View style={[styles.appIconPlaceholder, { backgroundColor: isDark ? 'rgba(255,255,255,0.1)' : 'rgba(0,0,0,0.05)' }]}>
                                             <Text variant="body" weight="bold">{app.appName.charAt(0)}</Text>
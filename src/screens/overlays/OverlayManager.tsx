@@ -3,6 +3,7 @@ import { View, StyleSheet, NativeEventEmitter, NativeModules, AppState, Modal, B
 import { DetoxOverlay, LimitOverlayStart, LimitOverlayEnd } from './OverlayScreens';
 import { CancelFlow } from './CancelFlow';
 import { limitsService, AppLimit } from '../../services/limitsService';
+import { useAppIcon } from '../../native/appIcon';
 
 const { BlockingModule } = NativeModules;
 
@@ -12,6 +13,8 @@ interface BlockEvent {
     remainingMinutes: number;
     remainingDays: number;
     dailyLimit: number;
+    // Native side only emits on changes: entered a restricted app, near its limit, blocked, left
+    transition?: 'entered' | 'warning' | 'blocked' | 'left';
 }
 
 interface OverlayManagerProps {
@@ -24,10 +27,7 @@ export const OverlayManager: React.FC<OverlayManagerProps> = ({ children }) => {
     const [overlayType, setOverlayType] = useState<'detox' | 'limit_start' | 'limit_end' | null>(null);
     const [showCancelFlow, setShowCancelFlow] = useState(false);
     const [currentLimit, setCurrentLimit] = useState<AppLimit | null>(null);
-
-    // Debounce to prevent flashing - ignore events within 500ms
-    const lastEventTimeRef = React.useRef<number>(0);
-    const DEBOUNCE_MS = 500;
+    const appIcon = useAppIcon(currentLimit?.packageName ?? currentBlock?.packageName);
 
     useEffect(() => {
         // Check block status on EVERY app focus (critical for onNewIntent)
@@ -48,6 +48,10 @@ export const OverlayManager: React.FC<OverlayManagerProps> = ({ children }) => {
         const blockListener = eventEmitter.addListener('onAppBlocked', (event: BlockEvent) => {
             handleBlockEvent(event);
         });
+        // Sent once the user is out of the restricted app (our own block screen doesn't count)
+        const clearedListener = eventEmitter.addListener('onBlockCleared', () => {
+            handleBlockCleared();
+        });
 
         // Start monitoring immediately
         BlockingModule?.startMonitoring?.();
@@ -61,6 +65,7 @@ export const OverlayManager: React.FC<OverlayManagerProps> = ({ children }) => {
         return () => {
             subscription.remove();
             blockListener.remove();
+            clearedListener.remove();
             BlockingModule?.stopMonitoring?.();
         };
     }, []);
@@ -116,13 +121,7 @@ export const OverlayManager: React.FC<OverlayManagerProps> = ({ children }) => {
     const acknowledgedSessions = React.useRef<Set<string>>(new Set());
 
     const handleBlockEvent = (event: BlockEvent) => {
-        // Debounce check - prevent rapid re-triggering that causes flashing
-        const now = Date.now();
-        if (now - lastEventTimeRef.current < DEBOUNCE_MS) {
-            return; // Ignore event if within debounce window
-        }
-        lastEventTimeRef.current = now;
-
+        // No debounce needed - native only sends state changes, coalesced per frame
         setCurrentBlock(event);
 
         // Get limit details
@@ -146,6 +145,12 @@ export const OverlayManager: React.FC<OverlayManagerProps> = ({ children }) => {
         }
     };
 
+    const handleBlockCleared = () => {
+        setShowCancelFlow(false);
+        setShowOverlay(false);
+        setCurrentBlock(null);
+    };
+
     const handleExit = () => {
         setShowOverlay(false);
         // TODO: Navigate back to home or launcher
@@ -191,7 +196,7 @@ export const OverlayManager: React.FC<OverlayManagerProps> = ({ children }) => {
                 {overlayType === 'detox' && currentBlock && (
                     <DetoxOverlay
                         appName={getAppName()}
-                        appIcon={currentLimit?.icon}
+                        appIcon={appIcon}
                         daysRemaining={currentBlock.remainingDays}
                         onExit={handleExit}
                         onCancel={handleStartCancel}
@@ -200,7 +205,7 @@ export const OverlayManager: React.FC<OverlayManagerProps> = ({ children }) => {
                 {overlayType === 'limit_start' && currentBlock && (
                     <LimitOverlayStart
                         appName={getAppName()}
-                        appIcon={currentLimit?.icon}
+                        appIcon={appIcon}
                         minutesRemaining={currentBlock.remainingMinutes}
                         onContinue={handleContinue}
                         onExit={handleExit}
@@ -209,7 +214,7 @@ export const OverlayManager: React.FC<OverlayManagerProps> = ({ children }) => {
                 {overlayType === 'limit_end' && (
                     <LimitOverlayEnd
                         appName={getAppName()}
-                        appIcon={currentLimit?.icon}
+                        appIcon={appIcon}
                         onExit={handleExit}
                         onCancel={handleStartCancel}
                     />
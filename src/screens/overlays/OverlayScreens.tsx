@@ -3,6 +3,7 @@ import { View, StyleSheet, TouchableOpacity, BackHandler, Image } from 'react-na
 import LinearGradient from 'react-native-linear-gradient';
 import { Text } from '../../components';
 import { spacing } from '../../theme/theme';
+import { iconUri } from '../../native/appIcon';
 
 interface DetoxOverlayProps {
     appName: string;
@@ -32,7 +33,7 @@ export const DetoxOverlay: React.FC<DetoxOverlayProps> = ({ appName, appIcon, da
             <View style={styles.content}>
                 {/* App Icon */}
                 {appIcon ? (
-                    <Image source={{ uri: `data:image/png;base64,${appIcon}` }} style={styles.appIcon} />
+                    <Image source={{ uri: iconUri(appIcon) }} style={styles.appIcon} />
                 ) : (
                     <View style={styles.appIconPlaceholder}>
                         <Text variant="h1" weight="bold">{appName.charAt(0)}</Text>
@@ -100,7 +101,7 @@ export const LimitOverlayStart: React.FC<LimitOverlayStartProps> = ({ appName, a
 
             <View style={styles.content}>
                 {appIcon ? (
-                    <Image source={{ uri: `data:image/png;base64,${appIcon}` }} style={styles.appIcon} />
+                    <Image source={{ uri: iconUri(appIcon) }} style={styles.appIcon} />
                 ) : (
                     <View style={styles.appIconPlaceholder}>
                         <Text variant="h1" weight="bold">{appName.charAt(0)}</Text>
@@ -169,7 +170,7 @@ export const LimitOverlayEnd: React.FC<LimitOverlayEndProps> = ({ appName, appIc
 
             <View style={styles.content}>
                 {appIcon ? (
-                    <Image source={{ uri: `data:image/png;base64,${appIcon}` }} style={styles.appIcon} />
+                    <Image source={{ uri: iconUri(appIcon) }} style={styles.appIcon} />
                 ) : (
                     <View style={styles.appIconPlaceholder}>
                         <Text variant="h1" weight="bold">{appName.charAt(0)}</Text>
@@ -9,10 +9,10 @@ const { BlockingModule } = NativeModules;
 // LIMIT TYPES
 // ============================================
 
+// Icons are not part of a limit: they are device-local files, looked up by packageName when drawn
 export interface AppLimit {
     packageName: string;
     appName: string;
-    icon?: string;
     mode: 'detox' | 'limit';
     dailyLimitMinutes?: number; // For limit mode
     detoxEndDate?: string; // ISO string for detox mode
@@ -27,6 +27,9 @@ export interface AppLimit {
 // LIMITS SERVICE
 // ============================================
 
+// Limits saved by older versions carry an icon (a Base64 PNG or another device's file:// path)
+const withoutIcon = ({ icon, ...limit }: AppLimit & { icon?: string }): AppLimit => limit;
+
 class LimitsService {
     private limits: AppLimit[] = [];
     private listeners: ((limits: AppLimit[]) => void)[] = [];
@@ -43,7 +46,7 @@ class LimitsService {
         // Try local first
         const localData = await AsyncStorage.getItem('blockd_limits');
         if (localData) {
-            this.limits = JSON.parse(localData);
+            this.limits = JSON.parse(localData).map(withoutIcon);
         }
 
         // If logged in, sync from Firestore
@@ -55,7 +58,7 @@ class LimitsService {
                     .collection('limits')
                     .get();
 
-                const firestoreLimits = snapshot.docs.map(doc => ({
+                const firestoreLimits = snapshot.docs.map(doc => withoutIcon({
                     ...doc.data(),
                     packageName: doc.id,
                 } as AppLimit));
@@ -97,7 +100,8 @@ class LimitsService {
     }
 
     // Save a limit
-    async saveLimit(limit: AppLimit): Promise<void> {
+    async saveLimit(newLimit: AppLimit): Promise<void> {
+        const limit = withoutIcon(newLimit);
         const existingIndex = this.limits.findIndex(l => l.packageName === limit.packageName);
 
         if (existingIndex >= 0) {